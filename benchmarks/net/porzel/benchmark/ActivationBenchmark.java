@@ -0,0 +1,75 @@
+package net.porzel.benchmark;
+
+import net.porzel.functions.ActivationFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the exact SIGMOID and TANH with their fast-math approximations. The setup prints the
+ * largest absolute error of the function against Math.exp or Math.tanh on the benchmark inputs.
+ * */
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ActivationBenchmark {
+    private static final int VALUES = 4096;
+
+    @Param({"SIGMOID", "FAST_SIGMOID", "TANH", "FAST_TANH"})
+    public String activation;
+
+    private ActivationFunction activationFunction;
+    private double[] inputs, values;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        activationFunction = NetworkState.activationFunction(activation);
+        inputs = new double[VALUES];
+        values = new double[VALUES];
+
+        for (int i = 0; i < VALUES; i++)
+            inputs[i] = random.nextGaussian() * 4;
+
+        System.arraycopy(inputs, 0, values, 0, VALUES);
+        activationFunction.function(values);
+
+        boolean sigmoid = activation.endsWith("SIGMOID");
+        double maximumError = 0;
+
+        for (int i = 0; i < VALUES; i++) {
+            double exact = sigmoid ? 1 / (1 + Math.exp(-inputs[i])) : Math.tanh(inputs[i]);
+            maximumError = Math.max(maximumError, Math.abs(values[i] - exact));
+        }
+
+        System.out.println("\nMaximum absolute error of " + activation + ": " + maximumError);
+    }
+
+    /**
+     * Time per element of the activation function applied to an array of VALUES elements.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(VALUES)
+    public double[] function() {
+        System.arraycopy(inputs, 0, values, 0, VALUES);
+        activationFunction.function(values);
+
+        return values;
+    }
+}
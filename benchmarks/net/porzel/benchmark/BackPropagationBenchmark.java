@@ -0,0 +1,29 @@
+package net.porzel.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BackPropagationBenchmark {
+
+    /**
+     * Samples per second of backPropagation, one forward pass, backward pass and weight update each.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void backPropagation(NetworkState state) {
+        int sample = state.nextSample();
+
+        state.neuralNetwork.backPropagation(state.inputs[sample], state.targets[sample]);
+    }
+}
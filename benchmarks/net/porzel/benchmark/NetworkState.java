@@ -0,0 +1,102 @@
+package net.porzel.benchmark;
+
+import net.porzel.NeuralNetwork;
+import net.porzel.functions.ActivationFunction;
+import net.porzel.functions.WeightInitialization;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * A network for every combination of layer shape, activation function and weight initialization,
+ * together with random samples that the benchmarks cycle through. The compiled and quantized
+ * variants are separate states, so only the benchmarks that use them pay for building them.
+ * */
+@State(Scope.Thread)
+public class NetworkState {
+    static final int SAMPLES = 256, BATCH = 64;
+
+    @Param({"small", "medium", "wide", "deep"})
+    public String shape;
+
+    @Param({"RELU", "LEAKY_RELU", "SIGMOID", "TANH"})
+    public String activation;
+
+    @Param({"HE", "LECUN", "GLOROT", "XAVIER"})
+    public String initialization;
+
+    NeuralNetwork neuralNetwork;
+    double[][] inputs, targets;
+    double[] batch, output;
+    private int sample = 0;
+
+    @Setup
+    public void setup() {
+        int[] layers = layers(shape);
+        Random random = new Random(42);
+
+        neuralNetwork = new NeuralNetwork(layers)
+                .setActivationFunction(activationFunction(activation))
+                .setWeightInitializationFunction(weightInitialization(initialization))
+                .setLearningRate(0.001);
+
+        inputs = samples(random, SAMPLES, layers[0]);
+        targets = samples(random, SAMPLES, layers[layers.length - 1]);
+        batch = new double[BATCH * layers[0]];
+        output = new double[layers[layers.length - 1]];
+
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = random.nextDouble();
+    }
+
+    int nextSample() {
+        sample = (sample + 1) % SAMPLES;
+        return sample;
+    }
+
+    static double[][] samples(Random random, int samples, int length) {
+        double[][] values = new double[samples][length];
+
+        for (int i = 0; i < samples; i++) {
+            for (int j = 0; j < length; j++)
+                values[i][j] = random.nextDouble();
+        }
+
+        return values;
+    }
+
+    static int[] layers(String shape) {
+        switch (shape) {
+            case "small": return new int[] {16, 32, 4};
+            case "medium": return new int[] {256, 256, 10};
+            case "wide": return new int[] {1024, 4096, 1024};
+            case "deep": return new int[] {128, 128, 128, 128, 128, 128, 128, 10};
+            default: throw new IllegalArgumentException(shape);
+        }
+    }
+
+    static ActivationFunction activationFunction(String activation) {
+        switch (activation) {
+            case "RELU": return ActivationFunction.RELU();
+            case "LEAKY_RELU": return ActivationFunction.LEAKY_RELU();
+            case "SIGMOID": return ActivationFunction.SIGMOID();
+            case "TANH": return ActivationFunction.TANH();
+            case "FAST_SIGMOID": return ActivationFunction.FAST_SIGMOID();
+            case "FAST_TANH": return ActivationFunction.FAST_TANH();
+            default: throw new IllegalArgumentException(activation);
+        }
+    }
+
+    static WeightInitialization weightInitialization(String initialization) {
+        switch (initialization) {
+            case "HE": return WeightInitialization.HE();
+            case "LECUN": return WeightInitialization.LECUN();
+            case "GLOROT": return WeightInitialization.GLOROT();
+            case "XAVIER": return WeightInitialization.XAVIER();
+            default: throw new IllegalArgumentException(initialization);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.porzel.benchmark;
+
+import net.porzel.CompiledNeuralNetwork;
+import net.porzel.QuantizedNeuralNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PropagationBenchmark {
+
+    /**
+     * Latency of a single sample through propagation into a reused output array.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] propagation(NetworkState state) {
+        return state.neuralNetwork.propagation(state.inputs[state.nextSample()], state.output);
+    }
+
+    /**
+     * Latency of a single sample through the evaluator returned by NeuralNetwork.compile.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] compiledPropagation(NetworkState state, CompiledState compiled) {
+        return compiled.compiled.propagation(state.inputs[state.nextSample()], state.output);
+    }
+
+    /**
+     * Latency of a single sample through the int8 engine returned by NeuralNetwork.quantize.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double[] quantizedPropagation(NetworkState state, QuantizedState quantized) {
+        return quantized.quantized.propagation(state.inputs[state.nextSample()], state.output);
+    }
+
+    /**
+     * Samples per second of batchPropagation over a batch of NetworkState.BATCH samples.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(NetworkState.BATCH)
+    public double[] batchPropagation(NetworkState state) {
+        return state.neuralNetwork.batchPropagation(state.batch, NetworkState.BATCH);
+    }
+
+    /**
+     * The evaluator of NeuralNetwork.compile for the network of the NetworkState.
+     * */
+    @State(Scope.Thread)
+    public static class CompiledState {
+        CompiledNeuralNetwork compiled;
+
+        @Setup
+        public void setup(NetworkState state) {
+            compiled = state.neuralNetwork.compile();
+        }
+    }
+
+    /**
+     * The int8 engine of NeuralNetwork.quantize for the network of the NetworkState, calibrated on its samples.
+     * */
+    @State(Scope.Thread)
+    public static class QuantizedState {
+        QuantizedNeuralNetwork quantized;
+
+        @Setup
+        public void setup(NetworkState state) {
+            quantized = state.neuralNetwork.quantize(state.inputs);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package net.porzel.benchmark;
+
+import net.porzel.NeuralNetwork;
+import net.porzel.functions.ActivationFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training throughput of mini-batch training for every combination of layer shape, batch size and
+ * number of worker threads.
+ * */
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TrainingBenchmark {
+
+    @Param({"small", "medium", "wide", "deep"})
+    public String shape;
+
+    @Param({"1", "16", "64"})
+    public int batchSize;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private NeuralNetwork neuralNetwork;
+
+    @Setup
+    public void setup() {
+        int[] layers = NetworkState.layers(shape);
+        Random random = new Random(42);
+
+        neuralNetwork = new NeuralNetwork(layers, 42)
+                .setActivationFunction(ActivationFunction.RELU())
+                .setLearningRate(0.001)
+                .setBatchSize(batchSize)
+                .setThreads(threads)
+                .setStatusPrinter(false);
+
+        neuralNetwork.setTrainingData(NetworkState.samples(random, NetworkState.SAMPLES, layers[0]), NetworkState.samples(random, NetworkState.SAMPLES, layers[layers.length - 1]));
+    }
+
+    @TearDown
+    public void tearDown() {
+        neuralNetwork.close();
+    }
+
+    /**
+     * Samples per second of train over NetworkState.SAMPLES samples, forward pass, backward pass and
+     * one weight update per batch.
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(NetworkState.SAMPLES)
+    public void train() {
+        neuralNetwork.train(NetworkState.SAMPLES);
+    }
+}
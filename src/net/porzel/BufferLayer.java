@@ -0,0 +1,137 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+import net.porzel.kernels.Kernels;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Layer whose row-major weights and biases live in little-endian byte buffers instead of the heap,
+ * for example in a memory mapped model file or in direct buffers allocated off-heap.
+ * */
+final class BufferLayer {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            //Direct buffers are released by the garbage collector instead
+        }
+
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    final int inputs, neurons;
+    final ByteBuffer weights;
+    final ByteBuffer biases;
+
+    BufferLayer(int inputs, int neurons, ByteBuffer weights, ByteBuffer biases) {
+        this.inputs = inputs;
+        this.neurons = neurons;
+        this.weights = weights;
+        this.biases = biases;
+    }
+
+    /**
+     * Allocates a copy of the given layer in direct buffers outside of the heap.
+     * */
+    static BufferLayer allocate(Layer layer) {
+        BufferLayer bufferLayer = allocate(layer.inputs, layer.neurons);
+
+        bufferLayer.weights.asDoubleBuffer().put(layer.weights);
+        bufferLayer.biases.asDoubleBuffer().put(layer.biases);
+
+        return bufferLayer;
+    }
+
+    /**
+     * Allocates a layer with zeroed weights and biases in direct buffers outside of the heap.
+     * */
+    static BufferLayer allocate(int inputs, int neurons) {
+        if((long) inputs * neurons * Double.BYTES > Integer.MAX_VALUE)
+            throw new RuntimeException("A layer cant be larger than 2 GB to be stored off-heap!");
+
+        ByteBuffer weights = ByteBuffer.allocateDirect(inputs * neurons * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer biases = ByteBuffer.allocateDirect(neurons * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        return new BufferLayer(inputs, neurons, weights, biases);
+    }
+
+    Layer toLayer() {
+        Layer layer = new Layer(inputs, neurons);
+
+        weights.asDoubleBuffer().get(0, layer.weights);
+        biases.asDoubleBuffer().get(0, layer.biases);
+
+        return layer;
+    }
+
+    /**
+     * Frees the memory of direct buffers right away instead of waiting for the garbage collector.
+     * The layer must not be used afterwards.
+     * */
+    void release() {
+        if(INVOKE_CLEANER == null || !weights.isDirect())
+            return;
+
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, weights);
+            INVOKE_CLEANER.invoke(UNSAFE, biases);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("The off-heap memory could not be released!", e);
+        }
+    }
+
+    double bias(int neuron) {
+        return biases.getDouble(neuron << 3);
+    }
+
+    void addBias(int neuron, double value) {
+        biases.putDouble(neuron << 3, biases.getDouble(neuron << 3) + value);
+    }
+
+    void propagation(double[] input, double[] output) {
+        Kernels kernels = Kernels.get();
+
+        for (int neuron = 0, offset = 0; neuron < neurons; neuron++, offset += inputs)
+            output[neuron] = kernels.dot(input, 0, weights, offset, inputs) + bias(neuron);
+    }
+
+    /**
+     * Propagates the input through all layers, keeping the activations of every layer in outputs.
+     * Returns the activations of the output layer.
+     * */
+    static double[] propagation(BufferLayer[] layers, ActivationFunction activationFunction, double[][] outputs, double[] input) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer].propagation(input, outputs[layer]);
+            activationFunction.function(outputs[layer]);
+
+            input = outputs[layer];
+        }
+
+        return input;
+    }
+
+    static double[][] allocateOutputs(BufferLayer[] layers) {
+        double[][] outputs = new double[layers.length][];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            outputs[layer] = new double[layers[layer].neurons];
+
+        return outputs;
+    }
+}
@@ -0,0 +1,317 @@
+package net.porzel;
+
+import net.porzel.optimizers.Optimizer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Training checkpoint format. All values are little-endian:
+ * <pre>
+ * int     magic "NCKP"
+ * int     format version
+ * int     1 if the rest of the file is gzip compressed, otherwise 0
+ * int     number of layers, including the input layer
+ * int[]   neurons of every layer
+ * long    number of weight updates
+ * int     number of trained samples
+ * per layer: double[neurons * inputs] row-major weights, double[neurons] biases
+ * per layer parameter and optimizer state buffer: int length (0 if absent), double[length] state
+ * </pre>
+ * An instance is the in-memory copy of one checkpoint. Its arrays are reused by every capture, so
+ * taking a checkpoint only costs a copy of the parameters.
+ * */
+final class CheckpointFile {
+    static final int MAGIC = 0x504B434E, VERSION = 1;
+    private static final int HEADER = 3 * Integer.BYTES, CHUNK = 1 << 16, STATE_BUFFERS = 2;
+
+    int[] neurons;
+    long updates;
+    int trainingEpochs;
+    double[][] parameters = new double[0][];
+    double[][][] state = new double[STATE_BUFFERS][0][];
+
+    /**
+     * Copies the parameters and the optimizer state of the network into this checkpoint.
+     * */
+    void capture(Layer[] layers, Optimizer optimizer, long updates, int trainingEpochs) {
+        if(neurons == null || neurons.length != layers.length + 1) {
+            neurons = new int[layers.length + 1];
+            parameters = new double[2 * layers.length][];
+
+            for (int buffer = 0; buffer < STATE_BUFFERS; buffer++)
+                state[buffer] = new double[2 * layers.length][];
+        }
+
+        neurons[0] = layers[0].inputs;
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            neurons[layer + 1] = layers[layer].neurons;
+
+            parameters[2 * layer] = copy(layers[layer].weights, parameters[2 * layer]);
+            parameters[2 * layer + 1] = copy(layers[layer].biases, parameters[2 * layer + 1]);
+        }
+
+        for (int buffer = 0; buffer < STATE_BUFFERS; buffer++) {
+            for (int parameter = 0; parameter < parameters.length; parameter++) {
+                double[] values = optimizer.getState(buffer, parameter);
+                state[buffer][parameter] = values == null ? null : copy(values, state[buffer][parameter]);
+            }
+        }
+
+        this.updates = updates;
+        this.trainingEpochs = trainingEpochs;
+    }
+
+    private static double[] copy(double[] source, double[] destination) {
+        if(destination == null || destination.length != source.length)
+            destination = new double[source.length];
+
+        System.arraycopy(source, 0, destination, 0, source.length);
+        return destination;
+    }
+
+    /**
+     * Copies the parameters and the optimizer state of this checkpoint back into the network.
+     * */
+    void restore(Layer[] layers, Optimizer optimizer) {
+        if(neurons.length != layers.length + 1 || neurons[0] != layers[0].inputs)
+            throw new RuntimeException("The checkpoint doesnt match with the layers of the network!");
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            if(neurons[layer + 1] != layers[layer].neurons)
+                throw new RuntimeException("The checkpoint doesnt match with the layers of the network!");
+        }
+
+        optimizer.reset();
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            System.arraycopy(parameters[2 * layer], 0, layers[layer].weights, 0, layers[layer].weights.length);
+            System.arraycopy(parameters[2 * layer + 1], 0, layers[layer].biases, 0, layers[layer].neurons);
+        }
+
+        for (int buffer = 0; buffer < STATE_BUFFERS; buffer++) {
+            for (int parameter = 0; parameter < parameters.length; parameter++) {
+                if(state[buffer][parameter] != null)
+                    optimizer.setState(buffer, parameter, state[buffer][parameter]);
+            }
+        }
+    }
+
+    void write(OutputStream stream, boolean compressed) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(compressed ? 1 : 0);
+        stream.write(header.array());
+
+        if(compressed) {
+            stream = new GZIPOutputStream(stream, CHUNK) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+
+        Output output = new Output(stream);
+
+        output.putInt(neurons.length);
+
+        for (int size : neurons)
+            output.putInt(size);
+
+        output.putLong(updates).putInt(trainingEpochs);
+
+        for (double[] values : parameters)
+            output.put(values);
+
+        for (int buffer = 0; buffer < STATE_BUFFERS; buffer++) {
+            for (double[] values : state[buffer]) {
+                output.putInt(values == null ? 0 : values.length);
+
+                if(values != null)
+                    output.put(values);
+            }
+        }
+
+        output.finish();
+    }
+
+    static CheckpointFile read(InputStream stream) throws IOException {
+        byte[] bytes = stream.readNBytes(HEADER);
+
+        if(bytes.length < HEADER)
+            throw new RuntimeException("The given file is not a checkpoint!");
+
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        if(header.getInt() != MAGIC)
+            throw new RuntimeException("The given file is not a checkpoint!");
+
+        int version = header.getInt();
+
+        if(version != VERSION)
+            throw new RuntimeException("The checkpoint format version " + version + " is not supported!");
+
+        Input input = new Input(header.getInt() == 1 ? new GZIPInputStream(stream, CHUNK) : stream);
+
+        CheckpointFile checkpoint = new CheckpointFile();
+        int layers = input.getInt();
+
+        if(layers < 3)
+            throw new RuntimeException("The network must have at least 3 layers!");
+
+        checkpoint.neurons = new int[layers];
+
+        for (int layer = 0; layer < layers; layer++) {
+            checkpoint.neurons[layer] = input.getInt();
+
+            if(checkpoint.neurons[layer] < 1)
+                throw new RuntimeException("There cant be less than one Neuron in one Layer!");
+        }
+
+        checkpoint.updates = input.getLong();
+        checkpoint.trainingEpochs = input.getInt();
+        checkpoint.parameters = new double[2 * (layers - 1)][];
+
+        for (int layer = 0; layer < layers - 1; layer++) {
+            long weights = (long) checkpoint.neurons[layer] * checkpoint.neurons[layer + 1];
+
+            if(weights > Integer.MAX_VALUE)
+                throw new RuntimeException("The layers of the checkpoint are too large!");
+
+            checkpoint.parameters[2 * layer] = input.get((int) weights);
+            checkpoint.parameters[2 * layer + 1] = input.get(checkpoint.neurons[layer + 1]);
+        }
+
+        for (int buffer = 0; buffer < STATE_BUFFERS; buffer++) {
+            checkpoint.state[buffer] = new double[checkpoint.parameters.length][];
+
+            for (int parameter = 0; parameter < checkpoint.parameters.length; parameter++) {
+                int length = input.getInt();
+
+                if(length != 0 && length != checkpoint.parameters[parameter].length)
+                    throw new RuntimeException("The optimizer state of the checkpoint doesnt match with its parameters!");
+
+                if(length != 0)
+                    checkpoint.state[buffer][parameter] = input.get(length);
+            }
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Little-endian writer that collects the values in a chunk before they are written to the stream.
+     * */
+    private static final class Output {
+        private final OutputStream stream;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Output(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        private Output reserve(int bytes) throws IOException {
+            if(chunk.remaining() < bytes)
+                flush();
+
+            return this;
+        }
+
+        Output putInt(int value) throws IOException {
+            reserve(Integer.BYTES).chunk.putInt(value);
+            return this;
+        }
+
+        Output putLong(long value) throws IOException {
+            reserve(Long.BYTES).chunk.putLong(value);
+            return this;
+        }
+
+        void put(double[] values) throws IOException {
+            for (int offset = 0; offset < values.length; ) {
+                reserve(Double.BYTES);
+
+                int length = Math.min(chunk.remaining() / Double.BYTES, values.length - offset);
+
+                chunk.asDoubleBuffer().put(values, offset, length);
+                chunk.position(chunk.position() + length * Double.BYTES);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            stream.write(chunk.array(), 0, chunk.position());
+            chunk.clear();
+        }
+
+        void finish() throws IOException {
+            flush();
+
+            if(stream instanceof GZIPOutputStream)
+                ((GZIPOutputStream) stream).finish();
+        }
+    }
+
+    /**
+     * Little-endian reader that reads the stream in chunks.
+     * */
+    private static final class Input {
+        private final InputStream stream;
+        private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        private Input(InputStream stream) {
+            this.stream = stream;
+            chunk.limit(0);
+        }
+
+        private Input require(int bytes) throws IOException {
+            if(chunk.remaining() >= bytes)
+                return this;
+
+            chunk.compact();
+
+            while (chunk.position() < bytes) {
+                int read = stream.read(chunk.array(), chunk.position(), chunk.remaining());
+
+                if(read < 0)
+                    throw new EOFException("The checkpoint is truncated!");
+
+                chunk.position(chunk.position() + read);
+            }
+
+            chunk.flip();
+            return this;
+        }
+
+        int getInt() throws IOException {
+            return require(Integer.BYTES).chunk.getInt();
+        }
+
+        long getLong() throws IOException {
+            return require(Long.BYTES).chunk.getLong();
+        }
+
+        double[] get(int length) throws IOException {
+            double[] values = new double[length];
+
+            for (int offset = 0; offset < length; ) {
+                require(Double.BYTES);
+
+                int count = Math.min(chunk.remaining() / Double.BYTES, length - offset);
+
+                chunk.asDoubleBuffer().get(values, offset, count);
+                chunk.position(chunk.position() + count * Double.BYTES);
+                offset += count;
+            }
+
+            return values;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package net.porzel;
+
+import net.porzel.optimizers.Optimizer;
+
+import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes checkpoints of a network to disk while it is being trained. Every interval weight updates
+ * the trainer copies the weights, the biases and the optimizer state into a reused buffer and hands
+ * it to a background thread, which writes it to a temporary file and renames it over the checkpoint
+ * atomically, so the checkpoint on disk is always complete even if the process dies while writing.
+ * If the previous checkpoint is still being written when the next one is due, the next one is
+ * skipped, so the trainer never waits for the disk. When the training ends, a final checkpoint of the
+ * last update is written and awaited.
+ * <p>
+ * The writer thread is started with the first checkpoint and stopped by close or by closing the
+ * network. A later checkpoint starts it again.
+ * <p>
+ * A network created with the same layers and optimizer continues from the checkpoint with
+ * NeuralNetwork.resume.
+ * */
+public final class Checkpointing implements AutoCloseable {
+    private final Path path, temporary;
+    private int interval = 10000;
+    private boolean compression = false;
+
+    private final CheckpointFile buffer = new CheckpointFile();
+    private ExecutorService executor;
+    private Future<?> pending;
+
+    private volatile int checkpoints = 0, skipped = 0;
+    private volatile long lastUpdate = -1;
+
+    public Checkpointing(Path path) {
+        this.path = path;
+        this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    /**
+     * Number of weight updates between two checkpoints.
+     * */
+    public Checkpointing setInterval(int interval) {
+        if(interval < 1)
+            throw new RuntimeException("The checkpoint interval must be at least 1!");
+
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Whether the checkpoints are gzip compressed. Compression makes the files smaller but the
+     * background writes take longer.
+     * */
+    public Checkpointing setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Number of checkpoints written to disk.
+     * */
+    public int getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Number of checkpoints that were skipped, because the previous one was still being written.
+     * */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the number of weight updates of the last checkpoint written to disk, -1 if there is none.
+     * */
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    boolean isWriting() {
+        return pending != null && !pending.isDone();
+    }
+
+    void checkpoint(Layer[] layers, Optimizer optimizer, long updates, int trainingEpochs) {
+        if(isWriting()) {
+            skipped++;
+            return;
+        }
+
+        //REPORTS A FAILED WRITE OF THE PREVIOUS CHECKPOINT
+        await();
+
+        if(executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "NeuralNetwork-Checkpoint");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        buffer.capture(layers, optimizer, updates, trainingEpochs);
+
+        boolean compressed = compression;
+        pending = executor.submit(() -> {
+            write(compressed);
+            return null;
+        });
+    }
+
+    private void write(boolean compressed) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            buffer.write(stream, compressed);
+            stream.getFD().sync();
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        lastUpdate = buffer.updates;
+        checkpoints++;
+    }
+
+    /**
+     * Waits for the running write to finish.
+     * */
+    void await() {
+        if(pending == null)
+            return;
+
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            pending = null;
+            throw new RuntimeException("Writing the checkpoint failed!", e.getCause());
+        }
+
+        pending = null;
+    }
+
+    /**
+     * Waits for the running write and stops the writer thread.
+     * */
+    @Override
+    public void close() {
+        try {
+            await();
+        } finally {
+            if(executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the checkpoint at the given path or returns null if there is none.
+     * */
+    static CheckpointFile read(Path path) throws IOException {
+        if(!Files.exists(path))
+            return null;
+
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
+            return CheckpointFile.read(stream);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+import net.porzel.kernels.Kernels;
+
+/**
+ * Inference only evaluator for a frozen network, created with NeuralNetwork.compile. The weights are
+ * copied when the network is compiled and never change afterwards, so one instance can serve any
+ * number of threads.
+ * <p>
+ * Compiling picks a specialized kernel for every layer once instead of on every call: layers with
+ * up to four inputs are fully unrolled with the inputs kept in registers. Small layers with at
+ * least 8 neurons store their weights transposed and add every input times its weight column to all
+ * neurons at once with the axpy kernel, which avoids a horizontal sum per neuron. Large layers
+ * compute four neurons at a time with the dot4 kernel, narrow ones a plain scalar dot product per
+ * neuron. The bias starts the accumulator of every neuron, RELU and LEAKY_RELU are applied while
+ * the neuron is stored where the kernel computes one neuron at a time, and the other functions are
+ * applied to the whole layer with their array kernel. Apart from the output length nothing is
+ * validated, the input must have exactly getInputs() values.
+ * */
+public final class CompiledNeuralNetwork {
+    private static final int UNROLLED = 0, COLUMNS = 1, SCALAR = 2, VECTOR = 3;
+    private static final int MAX_UNROLLED_INPUTS = 4, MIN_COLUMN_NEURONS = 8, MAX_COLUMN_SIZE = 64, MIN_VECTOR_INPUTS = 16;
+
+    private final int[] inputs, neurons, kernels;
+    private final double[][] weights, biases;
+    private final int activation;
+    private final ActivationFunction activationFunction;
+    private final ThreadLocal<Buffers> buffers;
+
+    CompiledNeuralNetwork(Layer[] layers, ActivationFunction activationFunction) {
+        if(activationFunction == null)
+            throw new RuntimeException("The network needs an activation function to be compiled!");
+
+        this.activationFunction = activationFunction;
+        this.activation = activationFunction.getId();
+
+        inputs = new int[layers.length];
+        neurons = new int[layers.length];
+        kernels = new int[layers.length];
+        weights = new double[layers.length][];
+        biases = new double[layers.length][];
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            inputs[layer] = layers[layer].inputs;
+            neurons[layer] = layers[layer].neurons;
+            weights[layer] = layers[layer].weights.clone();
+            biases[layer] = layers[layer].biases.clone();
+
+            if(inputs[layer] <= MAX_UNROLLED_INPUTS) {
+                kernels[layer] = UNROLLED;
+            } else if(neurons[layer] >= MIN_COLUMN_NEURONS && neurons[layer] <= MAX_COLUMN_SIZE && inputs[layer] <= MAX_COLUMN_SIZE) {
+                kernels[layer] = COLUMNS;
+                weights[layer] = transpose(layers[layer]);
+            } else if(inputs[layer] < MIN_VECTOR_INPUTS)
+                kernels[layer] = SCALAR;
+            else
+                kernels[layer] = VECTOR;
+        }
+
+        buffers = ThreadLocal.withInitial(() -> new Buffers(neurons));
+    }
+
+    public int getInputs() {
+        return inputs[0];
+    }
+
+    public int getOutputs() {
+        return neurons[neurons.length - 1];
+    }
+
+    public double[] propagation(double[] input) {
+        return propagation(input, new double[getOutputs()]);
+    }
+
+    public double[] propagation(double[] input, double[] output) {
+        if(output.length != getOutputs())
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        Buffers current = buffers.get();
+        int last = neurons.length - 1;
+
+        for (int layer = 0; layer < last; layer++) {
+            layer(layer, input, current.hidden[layer], current.sums);
+            input = current.hidden[layer];
+        }
+
+        layer(last, input, output, current.sums);
+
+        return output;
+    }
+
+    private void layer(int layer, double[] in, double[] out, double[] sums) {
+        double[] w = weights[layer], b = biases[layer];
+        int n = neurons[layer], m = inputs[layer];
+
+        switch (kernels[layer]) {
+            case UNROLLED: unrolled(w, b, in, out, n, m); break;
+            case COLUMNS: columns(w, b, in, out, n, m); break;
+            case SCALAR: scalar(w, b, in, out, n, m); break;
+            default: vector(w, b, in, out, n, m, sums); break;
+        }
+
+        switch (activation) {
+            case ActivationFunction.RELU:
+                if(kernels[layer] == COLUMNS)
+                    Kernels.get().relu(out);
+                break;
+            case ActivationFunction.LEAKY_RELU:
+                if(kernels[layer] == COLUMNS)
+                    Kernels.get().leakyRelu(out, 0.01);
+                break;
+            case ActivationFunction.SIGMOID: Kernels.get().sigmoid(out); break;
+            case ActivationFunction.TANH: Kernels.get().tanh(out); break;
+            case ActivationFunction.FAST_SIGMOID: Kernels.get().fastSigmoid(out); break;
+            case ActivationFunction.FAST_TANH: Kernels.get().fastTanh(out); break;
+            default: activationFunction.function(out); break;
+        }
+    }
+
+    /**
+     * Applies the activation functions that are cheap enough to be fused into the store of a neuron.
+     * */
+    private double store(double x) {
+        switch (activation) {
+            case ActivationFunction.RELU: return Math.max(0, x);
+            case ActivationFunction.LEAKY_RELU: return x > 0 ? x : x * 0.01;
+            default: return x;
+        }
+    }
+
+    private void unrolled(double[] w, double[] b, double[] in, double[] out, int n, int m) {
+        switch (m) {
+            case 1: {
+                double x0 = in[0];
+
+                for (int neuron = 0; neuron < n; neuron++)
+                    out[neuron] = store(b[neuron] + w[neuron] * x0);
+                break;
+            }
+            case 2: {
+                double x0 = in[0], x1 = in[1];
+
+                for (int neuron = 0, offset = 0; neuron < n; neuron++, offset += 2)
+                    out[neuron] = store(b[neuron] + w[offset] * x0 + w[offset + 1] * x1);
+                break;
+            }
+            case 3: {
+                double x0 = in[0], x1 = in[1], x2 = in[2];
+
+                for (int neuron = 0, offset = 0; neuron < n; neuron++, offset += 3)
+                    out[neuron] = store(b[neuron] + w[offset] * x0 + w[offset + 1] * x1 + w[offset + 2] * x2);
+                break;
+            }
+            default: {
+                double x0 = in[0], x1 = in[1], x2 = in[2], x3 = in[3];
+
+                for (int neuron = 0, offset = 0; neuron < n; neuron++, offset += 4)
+                    out[neuron] = store(b[neuron] + w[offset] * x0 + w[offset + 1] * x1 + w[offset + 2] * x2 + w[offset + 3] * x3);
+                break;
+            }
+        }
+    }
+
+    private static void columns(double[] w, double[] b, double[] in, double[] out, int n, int m) {
+        Kernels kernels = Kernels.get();
+
+        System.arraycopy(b, 0, out, 0, n);
+
+        for (int input = 0, offset = 0; input < m; input++, offset += n)
+            kernels.axpy(in[input], w, offset, out, 0, n);
+    }
+
+    private static double[] transpose(Layer layer) {
+        double[] transposed = new double[layer.weights.length];
+
+        for (int neuron = 0; neuron < layer.neurons; neuron++) {
+            for (int input = 0; input < layer.inputs; input++)
+                transposed[input * layer.neurons + neuron] = layer.weight(neuron, input);
+        }
+
+        return transposed;
+    }
+
+    private void scalar(double[] w, double[] b, double[] in, double[] out, int n, int m) {
+        for (int neuron = 0, offset = 0; neuron < n; neuron++, offset += m) {
+            double sum = b[neuron];
+
+            for (int input = 0; input < m; input++)
+                sum += w[offset + input] * in[input];
+
+            out[neuron] = store(sum);
+        }
+    }
+
+    private void vector(double[] w, double[] b, double[] in, double[] out, int n, int m, double[] sums) {
+        Kernels kernels = Kernels.get();
+        int neuron = 0;
+
+        for (; neuron + 4 <= n; neuron += 4) {
+            kernels.dot4(w, neuron * m, m, in, 0, m, sums);
+
+            out[neuron] = store(b[neuron] + sums[0]);
+            out[neuron + 1] = store(b[neuron + 1] + sums[1]);
+            out[neuron + 2] = store(b[neuron + 2] + sums[2]);
+            out[neuron + 3] = store(b[neuron + 3] + sums[3]);
+        }
+
+        for (; neuron < n; neuron++)
+            out[neuron] = store(b[neuron] + kernels.dot(w, neuron * m, in, 0, m));
+    }
+
+    /**
+     * Hidden layer outputs and dot4 sums of one thread.
+     * */
+    private static final class Buffers {
+        final double[][] hidden;
+        final double[] sums = new double[4];
+
+        Buffers(int[] neurons) {
+            hidden = new double[neurons.length - 1][];
+
+            for (int layer = 0; layer < hidden.length; layer++)
+                hidden[layer] = new double[neurons[layer]];
+        }
+    }
+}
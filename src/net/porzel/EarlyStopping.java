@@ -0,0 +1,195 @@
+package net.porzel;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Validates a network on its test data while it is being trained and stops the training once the
+ * validation loss has not improved for a number of validations. Every interval weight updates the
+ * trainer takes a snapshot of the weights and hands it to a background thread, which computes the
+ * mean squared error on the test data, so the trainer never waits for the validation. If the previous
+ * validation is still running when the next one is due, the next one is skipped.
+ * <p>
+ * The snapshot with the lowest validation loss is kept as the best checkpoint and is copied back into
+ * the network when the training ends. Once the training was stopped, further training calls return
+ * immediately until reset is called.
+ * <p>
+ * The validation thread is started with the first validation and stopped by reset and close, or by
+ * closing the network. A later validation starts it again.
+ * */
+public final class EarlyStopping implements AutoCloseable {
+    private int interval = 1000, patience = 10;
+    private double minDelta = 0;
+    private boolean restoreBest = true;
+
+    private ExecutorService executor;
+    private Future<?> pending;
+
+    private volatile NeuralNetworkSnapshot best;
+    private volatile double bestLoss = Double.POSITIVE_INFINITY, lastLoss = Double.NaN;
+    private volatile int validations = 0, withoutImprovement = 0;
+    private volatile boolean stopped = false;
+
+    /**
+     * Number of weight updates between two validations.
+     * */
+    public EarlyStopping setInterval(int interval) {
+        if(interval < 1)
+            throw new RuntimeException("The validation interval must be at least 1!");
+
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Number of validations without improvement after which the training is stopped.
+     * */
+    public EarlyStopping setPatience(int patience) {
+        if(patience < 1)
+            throw new RuntimeException("The patience must be at least 1!");
+
+        this.patience = patience;
+        return this;
+    }
+
+    /**
+     * Minimum decrease of the validation loss that counts as an improvement.
+     * */
+    public EarlyStopping setMinDelta(double minDelta) {
+        if(minDelta < 0)
+            throw new RuntimeException("The minimum delta cant be negative!");
+
+        this.minDelta = minDelta;
+        return this;
+    }
+
+    /**
+     * Whether the weights of the best checkpoint are copied back into the network when the training ends.
+     * */
+    public EarlyStopping setRestoreBest(boolean restoreBest) {
+        this.restoreBest = restoreBest;
+        return this;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public double getBestLoss() {
+        return bestLoss;
+    }
+
+    public double getLastLoss() {
+        return lastLoss;
+    }
+
+    public int getValidations() {
+        return validations;
+    }
+
+    /**
+     * Returns the snapshot with the lowest validation loss or null if no validation has finished yet.
+     * Its version is the number of weight updates after which it was taken.
+     * */
+    public NeuralNetworkSnapshot getBestSnapshot() {
+        return best;
+    }
+
+    /**
+     * Forgets the best checkpoint and the validation history, so the next training starts over.
+     * */
+    public void reset() {
+        close();
+
+        best = null;
+        bestLoss = Double.POSITIVE_INFINITY;
+        lastLoss = Double.NaN;
+        validations = 0;
+        withoutImprovement = 0;
+        stopped = false;
+    }
+
+    /**
+     * Waits for the running validation and stops the validation thread.
+     * */
+    @Override
+    public void close() {
+        await();
+
+        if(executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    boolean isRestoreBest() {
+        return restoreBest;
+    }
+
+    boolean isValidating() {
+        return pending != null && !pending.isDone();
+    }
+
+    void validate(NeuralNetworkSnapshot snapshot, double[][] input, double[][] target) {
+        if(executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "NeuralNetwork-Validation");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        pending = executor.submit(() -> validation(snapshot, input, target));
+    }
+
+    /**
+     * Waits for the running validation to finish.
+     * */
+    void await() {
+        if(pending == null)
+            return;
+
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("The validation failed!", e.getCause());
+        }
+
+        pending = null;
+    }
+
+    private void validation(NeuralNetworkSnapshot snapshot, double[][] input, double[][] target) {
+        double[] output = new double[target[0].length];
+        double squaredError = 0;
+
+        for (int sample = 0; sample < input.length; sample++) {
+            snapshot.propagation(input[sample], output);
+
+            for (int neuron = 0; neuron < output.length; neuron++) {
+                double error = target[sample][neuron] - output[neuron];
+                squaredError += error * error;
+            }
+        }
+
+        double loss = squaredError / ((double) input.length * output.length);
+
+        lastLoss = loss;
+        validations++;
+
+        if(loss < bestLoss - minDelta) {
+            best = snapshot;
+            bestLoss = loss;
+            withoutImprovement = 0;
+        } else if(++withoutImprovement >= patience) {
+            stopped = true;
+        }
+    }
+}
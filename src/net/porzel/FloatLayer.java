@@ -0,0 +1,48 @@
+package net.porzel;
+
+import net.porzel.kernels.Kernels;
+
+/**
+ * Single precision version of Layer with the same row-major weight layout.
+ * */
+final class FloatLayer {
+    final int inputs, neurons;
+    final float[] weights;
+    final float[] biases;
+
+    FloatLayer(int inputs, int neurons) {
+        this.inputs = inputs;
+        this.neurons = neurons;
+        this.weights = new float[inputs * neurons];
+        this.biases = new float[neurons];
+    }
+
+    FloatLayer(Layer layer) {
+        this(layer.inputs, layer.neurons);
+
+        for (int weight = 0; weight < weights.length; weight++)
+            weights[weight] = (float) layer.weights[weight];
+
+        for (int neuron = 0; neuron < neurons; neuron++)
+            biases[neuron] = (float) layer.biases[neuron];
+    }
+
+    Layer toLayer() {
+        Layer layer = new Layer(inputs, neurons);
+
+        for (int weight = 0; weight < weights.length; weight++)
+            layer.weights[weight] = weights[weight];
+
+        for (int neuron = 0; neuron < neurons; neuron++)
+            layer.biases[neuron] = biases[neuron];
+
+        return layer;
+    }
+
+    void propagation(float[] input, float[] output) {
+        Kernels kernels = Kernels.get();
+
+        for (int neuron = 0, offset = 0; neuron < neurons; neuron++, offset += inputs)
+            output[neuron] = kernels.dot(input, 0, weights, offset, inputs) + biases[neuron];
+    }
+}
@@ -0,0 +1,201 @@
+package net.porzel;
+
+import net.porzel.functions.FloatActivationFunction;
+import net.porzel.functions.FloatWeightInitialization;
+import net.porzel.kernels.Kernels;
+
+import java.util.Arrays;
+
+/**
+ * Single precision variant of the NeuralNetwork. Weights, biases and activations are stored as
+ * float, which halves the memory footprint and the memory bandwidth of every pass compared to the
+ * double precision network. A NeuralNetwork can be converted to a FloatNeuralNetwork and back.
+ * */
+public class FloatNeuralNetwork {
+    private final FloatLayer[] layers;
+    private float learningRate;
+    private FloatActivationFunction activationFunction;
+
+    private final ThreadLocal<Workspace> workspaces;
+
+    public FloatNeuralNetwork(int[] layers) {
+        this(createLayers(layers));
+
+        setWeightInitializationFunction(FloatWeightInitialization.XAVIER());
+    }
+
+    /**
+     * Converts the given network to single precision, keeping its activation function and learning rate.
+     * */
+    public FloatNeuralNetwork(NeuralNetwork neuralNetwork) {
+        this(convert(neuralNetwork.getLayers()));
+
+        if(neuralNetwork.getActivationFunction() != null)
+            activationFunction = FloatActivationFunction.of(neuralNetwork.getActivationFunction());
+
+        learningRate = (float) neuralNetwork.getLearningRate();
+    }
+
+    private FloatNeuralNetwork(FloatLayer[] layers) {
+        this.layers = layers;
+
+        workspaces = ThreadLocal.withInitial(() -> new Workspace(this.layers));
+    }
+
+    private static FloatLayer[] createLayers(int[] layers) {
+        if(layers.length < 3)
+            throw new RuntimeException("The network must have at least 3 layers!");
+
+        FloatLayer[] created = new FloatLayer[layers.length - 1];
+
+        for (int layer = 0; layer < layers.length - 1; layer++) {
+            if(layers[layer] < 1 || layers[layer + 1] < 1)
+                throw new RuntimeException("There cant be less than one Neuron in one Layer!");
+
+            created[layer] = new FloatLayer(layers[layer], layers[layer + 1]);
+        }
+
+        return created;
+    }
+
+    private static FloatLayer[] convert(Layer[] layers) {
+        FloatLayer[] converted = new FloatLayer[layers.length];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            converted[layer] = new FloatLayer(layers[layer]);
+
+        return converted;
+    }
+
+    /**
+     * Converts this network back to double precision.
+     * */
+    public NeuralNetwork toNeuralNetwork() {
+        Layer[] converted = new Layer[layers.length];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            converted[layer] = layers[layer].toLayer();
+
+        NeuralNetwork neuralNetwork = new NeuralNetwork(converted).setLearningRate(learningRate);
+
+        if(activationFunction != null)
+            neuralNetwork.setActivationFunction(activationFunction.toActivationFunction());
+
+        return neuralNetwork;
+    }
+
+    public FloatNeuralNetwork setActivationFunction(FloatActivationFunction activationFunction) {
+        this.activationFunction = activationFunction;
+        return this;
+    }
+
+    public FloatNeuralNetwork setLearningRate(float learningRate) {
+        this.learningRate = learningRate;
+        return this;
+    }
+
+    public FloatNeuralNetwork setWeightInitializationFunction(FloatWeightInitialization weightInitialization) {
+        float[][] weights = new float[layers.length][];
+        float[][] biases = new float[layers.length][];
+        int[] neurons = new int[layers.length];
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            weights[layer] = layers[layer].weights;
+            biases[layer] = layers[layer].biases;
+            neurons[layer] = layers[layer].neurons;
+        }
+
+        weightInitialization.function(weights, neurons);
+        weightInitialization.function(biases);
+
+        return this;
+    }
+
+    public float[] propagation(float[] input) {
+        return propagation(input, new float[layers[layers.length - 1].neurons]);
+    }
+
+    public float[] propagation(float[] input, float[] output) {
+        if(input.length != layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(output.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        float[] result = workspaces.get().propagation(layers, activationFunction, input);
+        System.arraycopy(result, 0, output, 0, output.length);
+
+        return output;
+    }
+
+    public void backPropagation(float[] input, float[] targetOutput) {
+        if(input.length != layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(targetOutput.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given target output length doesnt match with the number of output-neurons!");
+
+        Kernels kernels = Kernels.get();
+        Workspace workspace = workspaces.get();
+        float[][] outputs = workspace.outputs;
+        float[][] neuronError = workspace.errors;
+
+        //PROPAGATION
+        workspace.propagation(layers, activationFunction, input);
+
+        //ERROR CALCULATING OUTPUT LAYER
+        int outputLayer = layers.length - 1;
+
+        for (int neuron = 0; neuron < layers[outputLayer].neurons; neuron++)
+            neuronError[outputLayer][neuron] = targetOutput[neuron] - outputs[outputLayer][neuron];
+
+        //ERROR CALCULATING HIDDEN LAYER
+        for (int layer = outputLayer - 1; layer >= 0; layer--) {
+            FloatLayer next = layers[layer + 1];
+
+            Arrays.fill(neuronError[layer], 0);
+
+            for (int neuronNextLayer = 0, offset = 0; neuronNextLayer < next.neurons; neuronNextLayer++, offset += next.inputs)
+                kernels.axpy(neuronError[layer + 1][neuronNextLayer], next.weights, offset, neuronError[layer], 0, layers[layer].neurons);
+        }
+
+        //UPDATE WEIGHTS
+        for (int layer = 0; layer <= outputLayer; layer++) {
+            FloatLayer current = layers[layer];
+            float[] layerInput = layer == 0 ? input : outputs[layer - 1];
+
+            for (int neuron = 0, offset = 0; neuron < current.neurons; neuron++, offset += current.inputs) {
+                float delta = learningRate * neuronError[layer][neuron] * activationFunction.derivative(outputs[layer][neuron]);
+
+                kernels.axpy(delta, layerInput, 0, current.weights, offset, current.inputs);
+                current.biases[neuron] += delta;
+            }
+        }
+    }
+
+    private static final class Workspace {
+        private final float[][] outputs;
+        private final float[][] errors;
+
+        private Workspace(FloatLayer[] layers) {
+            outputs = new float[layers.length][];
+            errors = new float[layers.length][];
+
+            for (int layer = 0; layer < layers.length; layer++) {
+                outputs[layer] = new float[layers[layer].neurons];
+                errors[layer] = new float[layers[layer].neurons];
+            }
+        }
+
+        private float[] propagation(FloatLayer[] layers, FloatActivationFunction activationFunction, float[] input) {
+            for (int layer = 0; layer < layers.length; layer++) {
+                layers[layer].propagation(input, outputs[layer]);
+                activationFunction.function(outputs[layer]);
+
+                input = outputs[layer];
+            }
+
+            return input;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.porzel;
+
+import java.util.Arrays;
+
+class Gradient {
+    final Layer[] layers;
+    final long[] forwardNanos, backwardNanos;
+    double squaredError;
+
+    Gradient(Layer[] layers) {
+        this.layers = new Layer[layers.length];
+        this.forwardNanos = new long[layers.length];
+        this.backwardNanos = new long[layers.length];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            this.layers[layer] = new Layer(layers[layer].inputs, layers[layer].neurons);
+    }
+
+    void clear() {
+        for (Layer layer : layers)
+            layer.clear();
+
+        clearStatistics();
+    }
+
+    /**
+     * Clears everything except the weights of the first layer, of which sparse training only clears
+     * the columns it touches.
+     * */
+    void clearDense() {
+        for (int layer = 1; layer < layers.length; layer++)
+            layers[layer].clear();
+
+        Arrays.fill(layers[0].biases, 0);
+
+        clearStatistics();
+    }
+
+    private void clearStatistics() {
+        Arrays.fill(forwardNanos, 0);
+        Arrays.fill(backwardNanos, 0);
+        squaredError = 0;
+    }
+
+    void add(Gradient other) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer].add(other.layers[layer]);
+
+            forwardNanos[layer] += other.forwardNanos[layer];
+            backwardNanos[layer] += other.backwardNanos[layer];
+        }
+
+        squaredError += other.squaredError;
+    }
+
+    /**
+     * Returns the L2 norm of all weight and bias gradients, without the weights of the first layer
+     * unless firstWeights is set.
+     * */
+    double norm(boolean firstWeights) {
+        double sum = 0;
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            if(layer > 0 || firstWeights) {
+                for (double weight : layers[layer].weights)
+                    sum += weight * weight;
+            }
+
+            for (double bias : layers[layer].biases)
+                sum += bias * bias;
+        }
+
+        return Math.sqrt(sum);
+    }
+}
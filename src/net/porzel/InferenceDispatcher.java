@@ -0,0 +1,333 @@
+package net.porzel;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves single inputs from many threads with batched propagation. Callers submit one input and get a
+ * future of its output, a scheduler thread collects the pending inputs into batches of at most
+ * maxBatchSize inputs and runs every batch through batchPropagation of the network. A batch is started
+ * as soon as it is full or once its oldest input has waited maxWait microseconds.
+ * <p>
+ * The queue of pending inputs is bounded. submit blocks while it is full and trySubmit fails instead,
+ * so callers are slowed down to the rate the network can serve. The queue only uses java.util.concurrent
+ * locks, so blocked virtual threads unmount instead of pinning their carrier. The futures are completed
+ * on the scheduler thread, so expensive follow-up work should use the async stages of the future.
+ * <p>
+ * A batch that fails with an exception fails the futures of its inputs and the dispatcher goes on. An
+ * Error like an OutOfMemoryError also closes the dispatcher and fails every queued input, so no future
+ * waits for a scheduler that is gone.
+ * <p>
+ * Combined with setConcurrentInference, the network can be trained while it serves requests.
+ * */
+public final class InferenceDispatcher implements InferenceDispatcherMXBean, AutoCloseable {
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final NeuralNetwork neuralNetwork;
+    private final int inputs, outputs;
+
+    private int maxBatchSize = 64, queueCapacity = 1024;
+    private long maxWait = 200;
+
+    private ArrayBlockingQueue<Request> queue;
+    private Thread scheduler;
+
+    private volatile boolean closed = false;
+
+    private final AtomicLong submitted = new AtomicLong(), rejected = new AtomicLong();
+    private volatile long completed = 0, batches = 0;
+
+    public InferenceDispatcher(NeuralNetwork neuralNetwork) {
+        Layer[] layers = neuralNetwork.getLayers();
+
+        this.neuralNetwork = neuralNetwork;
+        this.inputs = layers[0].inputs;
+        this.outputs = layers[layers.length - 1].neurons;
+    }
+
+    public InferenceDispatcher setMaxBatchSize(int maxBatchSize) {
+        checkNotStarted();
+
+        if(maxBatchSize < 1)
+            throw new RuntimeException("The batch size must be at least 1!");
+
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * Longest time in microseconds the oldest input of a batch waits for further inputs.
+     * */
+    public InferenceDispatcher setMaxWait(long maxWait) {
+        checkNotStarted();
+
+        if(maxWait < 0)
+            throw new RuntimeException("The maximum wait cant be negative!");
+
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    public InferenceDispatcher setQueueCapacity(int queueCapacity) {
+        checkNotStarted();
+
+        if(queueCapacity < 1)
+            throw new RuntimeException("The queue capacity must be at least 1!");
+
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public InferenceDispatcher start() {
+        checkNotStarted();
+
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        scheduler = new Thread(this::schedule, "NeuralNetwork-Dispatcher");
+        scheduler.setDaemon(true);
+        scheduler.start();
+
+        return this;
+    }
+
+    /**
+     * Registers the dispatcher at the platform MBean server as net.porzel:type=InferenceDispatcher,name=[name].
+     * */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("net.porzel:type=InferenceDispatcher,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("The dispatcher could not be registered!", e);
+        }
+    }
+
+    /**
+     * Queues the input, waiting while the queue is full. The input must not be changed until the
+     * future is completed.
+     * */
+    public CompletableFuture<double[]> submit(double[] input) throws InterruptedException {
+        Request request = request(input);
+
+        queue.put(request);
+
+        return enqueued(request);
+    }
+
+    /**
+     * Queues the input if the queue has space, otherwise returns a future that failed with a
+     * RejectedExecutionException.
+     * */
+    public CompletableFuture<double[]> trySubmit(double[] input) {
+        Request request = request(input);
+
+        if(!queue.offer(request)) {
+            rejected.incrementAndGet();
+            request.future.completeExceptionally(new RejectedExecutionException("The dispatcher queue is full!"));
+
+            return request.future;
+        }
+
+        return enqueued(request);
+    }
+
+    private Request request(double[] input) {
+        if(scheduler == null)
+            throw new RuntimeException("The dispatcher has not been started!");
+
+        if(closed)
+            throw new RuntimeException("The dispatcher is closed!");
+
+        if(input.length != inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        return new Request(input);
+    }
+
+    private CompletableFuture<double[]> enqueued(Request request) {
+        submitted.incrementAndGet();
+
+        //A REQUEST THAT RACED WITH CLOSE IS FAILED HERE UNLESS THE SCHEDULER ALREADY TOOK IT
+        if(closed && queue.remove(request))
+            request.future.completeExceptionally(new RejectedExecutionException("The dispatcher is closed!"));
+
+        return request.future;
+    }
+
+    private void schedule() {
+        try {
+            serve();
+        } catch (Throwable e) {
+            closed = true;
+
+            Request request;
+
+            while ((request = queue.poll()) != null)
+                request.future.completeExceptionally(new RejectedExecutionException("The dispatcher has stopped!", e));
+
+            throw e;
+        }
+    }
+
+    private void serve() {
+        Request[] batch = new Request[maxBatchSize];
+        double[] input = new double[maxBatchSize * inputs];
+        long maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWait);
+
+        while (true) {
+            //THE INTERRUPT OF CLOSE CAN BE CONSUMED BY THE POLL FOR A BATCH, SO CLOSED IS CHECKED HERE
+            if(closed && queue.isEmpty())
+                return;
+
+            Request first;
+
+            try {
+                first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            if(first == null)
+                continue;
+
+            batch[0] = first;
+            int size = 1;
+            long deadline = first.submitted + maxWaitNanos;
+
+            while (size < maxBatchSize) {
+                Request next = queue.poll();
+
+                if(next == null) {
+                    long remaining = deadline - System.nanoTime();
+
+                    if(remaining <= 0 || closed)
+                        break;
+
+                    try {
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        next = null;
+                    }
+
+                    if(next == null)
+                        break;
+                }
+
+                batch[size++] = next;
+            }
+
+            run(batch, size, input);
+        }
+    }
+
+    private void run(Request[] batch, int size, double[] input) {
+        try {
+            for (int row = 0; row < size; row++)
+                System.arraycopy(batch[row].input, 0, input, row * inputs, inputs);
+
+            double[] output = neuralNetwork.batchPropagation(size == maxBatchSize ? input : Arrays.copyOf(input, size * inputs), size);
+
+            for (int row = 0; row < size; row++)
+                batch[row].future.complete(Arrays.copyOfRange(output, row * outputs, (row + 1) * outputs));
+        } catch (RuntimeException e) {
+            fail(batch, size, e);
+        } catch (Throwable e) {
+            fail(batch, size, e);
+            throw e;
+        }
+
+        completed += size;
+        batches++;
+
+        Arrays.fill(batch, 0, size, null);
+    }
+
+    private static void fail(Request[] batch, int size, Throwable cause) {
+        for (int row = 0; row < size; row++)
+            batch[row].future.completeExceptionally(cause);
+    }
+
+    /**
+     * Stops accepting inputs, serves the inputs that are already queued and stops the scheduler. If
+     * the calling thread is interrupted while it waits for the scheduler, the remaining inputs are
+     * failed and the interrupt flag is set again.
+     * */
+    @Override
+    public void close() {
+        if(closed || scheduler == null)
+            return;
+
+        closed = true;
+        scheduler.interrupt();
+
+        try {
+            scheduler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Request request;
+
+        while ((request = queue.poll()) != null)
+            request.future.completeExceptionally(new RejectedExecutionException("The dispatcher is closed!"));
+    }
+
+    private void checkNotStarted() {
+        if(scheduler != null)
+            throw new RuntimeException("The dispatcher has already been started!");
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getCompleted() {
+        return completed;
+    }
+
+    @Override
+    public long getBatches() {
+        return batches;
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        long currentBatches = batches;
+
+        return currentBatches == 0 ? 0 : (double) completed / currentBatches;
+    }
+
+    private static final class Request {
+        final double[] input;
+        final long submitted = System.nanoTime();
+        final CompletableFuture<double[]> future = new CompletableFuture<>();
+
+        Request(double[] input) {
+            this.input = input;
+        }
+    }
+}
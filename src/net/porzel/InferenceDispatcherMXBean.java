@@ -0,0 +1,21 @@
+package net.porzel;
+
+/**
+ * Management interface under which an InferenceDispatcher is exported over JMX.
+ * */
+public interface InferenceDispatcherMXBean {
+
+    int getQueueDepth();
+
+    int getQueueCapacity();
+
+    long getSubmitted();
+
+    long getRejected();
+
+    long getCompleted();
+
+    long getBatches();
+
+    double getAverageBatchSize();
+}
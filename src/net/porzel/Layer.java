@@ -0,0 +1,242 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+import net.porzel.kernels.Kernels;
+
+import java.util.Arrays;
+
+/**
+ * Weights and biases of one fully connected layer. The weights are stored as a single row-major
+ * matrix, the weights of a neuron start at offset(neuron) and are followed by the next neuron.
+ * */
+final class Layer {
+    private static final int BLOCK_ROWS = 32, BLOCK_NEURONS = 32, BLOCK_INPUTS = 256;
+
+    final int inputs, neurons;
+    final double[] weights;
+    final double[] biases;
+
+    Layer(int inputs, int neurons) {
+        this.inputs = inputs;
+        this.neurons = neurons;
+        this.weights = new double[inputs * neurons];
+        this.biases = new double[neurons];
+    }
+
+    Layer(Layer layer) {
+        this.inputs = layer.inputs;
+        this.neurons = layer.neurons;
+        this.weights = layer.weights.clone();
+        this.biases = layer.biases.clone();
+    }
+
+    int offset(int neuron) {
+        return neuron * inputs;
+    }
+
+    /**
+     * Computes the layer for a sparse input that is zero except for values[i] at indices[i] for i in
+     * [from, to). Only the weight columns of those indices are read.
+     * */
+    void propagation(int[] indices, double[] values, int from, int to, double[] out) {
+        for (int neuron = 0, offset = 0; neuron < neurons; neuron++, offset += inputs) {
+            double sum = biases[neuron];
+
+            for (int i = from; i < to; i++)
+                sum += weights[offset + indices[i]] * values[i];
+
+            out[neuron] = sum;
+        }
+    }
+
+    /**
+     * Adds alpha times the outer product of the delta starting at deltaOffset and a sparse input to the
+     * weights, which only changes the weight columns of the indices in [from, to).
+     * */
+    void addSparse(double alpha, double[] delta, int deltaOffset, int[] indices, double[] values, int from, int to) {
+        for (int neuron = 0, offset = 0; neuron < neurons; neuron++, offset += inputs) {
+            double scale = alpha * delta[deltaOffset + neuron];
+
+            if(scale == 0)
+                continue;
+
+            for (int i = from; i < to; i++)
+                weights[offset + indices[i]] += scale * values[i];
+        }
+    }
+
+    double weight(int neuron, int input) {
+        return weights[neuron * inputs + input];
+    }
+
+    /**
+     * Writes the weighted sums of the given input plus the biases into output, without activation.
+     * */
+    void propagation(double[] input, double[] output) {
+        Kernels kernels = Kernels.get();
+
+        for (int neuron = 0, offset = 0; neuron < neurons; neuron++, offset += inputs)
+            output[neuron] = kernels.dot(input, 0, weights, offset, inputs) + biases[neuron];
+    }
+
+    /**
+     * Batched version of propagation for rows inputs stored row-major in input. The weights are
+     * processed in blocks of BLOCK_NEURONS x BLOCK_INPUTS that stay in cache while they are applied
+     * to BLOCK_ROWS inputs, instead of streaming the whole matrix from memory for every input.
+     * */
+    void propagation(double[] input, double[] output, int rows) {
+        Kernels kernels = Kernels.get();
+        double[] sums = new double[4];
+
+        Arrays.fill(output, 0, rows * neurons, 0);
+
+        for (int firstInput = 0; firstInput < inputs; firstInput += BLOCK_INPUTS) {
+            int lastInput = Math.min(firstInput + BLOCK_INPUTS, inputs);
+
+            for (int firstNeuron = 0; firstNeuron < neurons; firstNeuron += BLOCK_NEURONS) {
+                int lastNeuron = Math.min(firstNeuron + BLOCK_NEURONS, neurons);
+
+                for (int firstRow = 0; firstRow < rows; firstRow += BLOCK_ROWS) {
+                    int lastRow = Math.min(firstRow + BLOCK_ROWS, rows);
+
+                    int row = firstRow;
+
+                    //FOUR INPUTS SHARE EVERY LOADED WEIGHT
+                    for (; row + 4 <= lastRow; row += 4) {
+                        int inputOffset = row * inputs, outputOffset = row * neurons;
+
+                        for (int neuron = firstNeuron; neuron < lastNeuron; neuron++) {
+                            kernels.dot4(input, inputOffset + firstInput, inputs, weights, neuron * inputs + firstInput, lastInput - firstInput, sums);
+
+                            output[outputOffset + neuron] += sums[0];
+                            output[outputOffset + neurons + neuron] += sums[1];
+                            output[outputOffset + 2 * neurons + neuron] += sums[2];
+                            output[outputOffset + 3 * neurons + neuron] += sums[3];
+                        }
+                    }
+
+                    for (; row < lastRow; row++) {
+                        int inputOffset = row * inputs, outputOffset = row * neurons;
+
+                        for (int neuron = firstNeuron; neuron < lastNeuron; neuron++)
+                            output[outputOffset + neuron] += kernels.dot(input, inputOffset + firstInput, weights, neuron * inputs + firstInput, lastInput - firstInput);
+                    }
+                }
+            }
+        }
+
+        for (int row = 0, outputOffset = 0; row < rows; row++, outputOffset += neurons) {
+            for (int neuron = 0; neuron < neurons; neuron++) {
+                output[outputOffset + neuron] += biases[neuron];
+            }
+        }
+    }
+
+    /**
+     * Propagates rows inputs stored row-major through all layers and returns the row-major outputs.
+     * */
+    static double[] propagation(Layer[] layers, ActivationFunction activationFunction, double[] input, int rows) {
+        if(input.length != rows * layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        for (Layer layer : layers) {
+            double[] output = new double[rows * layer.neurons];
+
+            layer.propagation(input, output, rows);
+            activationFunction.function(output);
+
+            input = output;
+        }
+
+        return input;
+    }
+
+    static double[] propagation(Layer[] layers, ActivationFunction activationFunction, Workspace workspace, int[] indices, double[] values, double[] output) {
+        checkSparse(layers[0], indices, values, 0, indices.length);
+
+        if(output.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        double[] result = workspace.propagation(layers, activationFunction, indices, values, 0, indices.length, null);
+        System.arraycopy(result, 0, output, 0, output.length);
+
+        return output;
+    }
+
+    static double[] propagation(Layer[] layers, ActivationFunction activationFunction, Workspace workspace, SparseBatch batch) {
+        int outputs = layers[layers.length - 1].neurons;
+        double[] output = new double[batch.rows * outputs];
+
+        checkSparse(layers[0], batch.indices, batch.values, 0, batch.indices.length);
+
+        for (int row = 0; row < batch.rows; row++) {
+            double[] result = workspace.propagation(layers, activationFunction, batch.indices, batch.values, batch.offsets[row], batch.offsets[row + 1], null);
+            System.arraycopy(result, 0, output, row * outputs, outputs);
+        }
+
+        return output;
+    }
+
+    static void checkSparse(Layer layer, int[] indices, double[] values, int from, int to) {
+        if(indices.length != values.length)
+            throw new RuntimeException("The number of indices doesnt match with the number of values!");
+
+        for (int i = from; i < to; i++) {
+            if(indices[i] < 0 || indices[i] >= layer.inputs)
+                throw new RuntimeException("The input index " + indices[i] + " doesnt exist!");
+        }
+    }
+
+    static double[][] propagation(Layer[] layers, ActivationFunction activationFunction, double[][] input) {
+        int inputs = layers[0].inputs, outputs = layers[layers.length - 1].neurons;
+        double[] flatInput = new double[input.length * inputs];
+
+        for (int row = 0; row < input.length; row++) {
+            if(input[row].length != inputs)
+                throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+            System.arraycopy(input[row], 0, flatInput, row * inputs, inputs);
+        }
+
+        double[] flatOutput = propagation(layers, activationFunction, flatInput, input.length);
+        double[][] output = new double[input.length][];
+
+        for (int row = 0; row < input.length; row++)
+            output[row] = Arrays.copyOfRange(flatOutput, row * outputs, (row + 1) * outputs);
+
+        return output;
+    }
+
+    void clear() {
+        Arrays.fill(weights, 0);
+        Arrays.fill(biases, 0);
+    }
+
+    void set(Layer layer) {
+        System.arraycopy(layer.weights, 0, weights, 0, weights.length);
+        System.arraycopy(layer.biases, 0, biases, 0, neurons);
+    }
+
+    void add(Layer layer) {
+        add(layer, 1);
+    }
+
+    /**
+     * Adds scale times the weights and biases of the given layer to this layer.
+     * */
+    void add(Layer layer, double scale) {
+        Kernels kernels = Kernels.get();
+
+        kernels.axpy(scale, layer.weights, 0, weights, 0, weights.length);
+        kernels.axpy(scale, layer.biases, 0, biases, 0, neurons);
+    }
+
+    static Layer[] copy(Layer[] layers) {
+        Layer[] copy = new Layer[layers.length];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            copy[layer] = new Layer(layers[layer]);
+
+        return copy;
+    }
+}
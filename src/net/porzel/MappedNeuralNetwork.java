@@ -0,0 +1,67 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Read-only network that serves inference straight from a memory mapped model file written by
+ * NeuralNetwork.save. Opening a model only reads its header, the parameters are paged in by the
+ * operating system on first use and are shared through the page cache by every JVM that maps the
+ * same file.
+ * */
+public final class MappedNeuralNetwork {
+    private final BufferLayer[] layers;
+    private ActivationFunction activationFunction;
+
+    private final ThreadLocal<double[][]> outputs;
+
+    private MappedNeuralNetwork(BufferLayer[] layers, ActivationFunction activationFunction) {
+        this.layers = layers;
+        this.activationFunction = activationFunction;
+
+        outputs = ThreadLocal.withInitial(() -> BufferLayer.allocateOutputs(this.layers));
+    }
+
+    /**
+     * Maps the given model file. Models with a custom activation function need it to be set with
+     * setActivationFunction before they can be used.
+     * */
+    public static MappedNeuralNetwork open(Path path) throws IOException {
+        try (FileChannel channel = ModelFile.open(path)) {
+            ModelFile modelFile = ModelFile.read(channel);
+            BufferLayer[] layers = new BufferLayer[modelFile.neurons.length - 1];
+
+            for (int layer = 0; layer < layers.length; layer++)
+                layers[layer] = new BufferLayer(modelFile.neurons[layer], modelFile.neurons[layer + 1], modelFile.mapWeights(channel, layer), modelFile.mapBiases(channel, layer));
+
+            ActivationFunction activationFunction = modelFile.activationFunction == ActivationFunction.CUSTOM ? null : ActivationFunction.byId(modelFile.activationFunction);
+
+            return new MappedNeuralNetwork(layers, activationFunction);
+        }
+    }
+
+    public MappedNeuralNetwork setActivationFunction(ActivationFunction activationFunction) {
+        this.activationFunction = activationFunction;
+        return this;
+    }
+
+    public double[] propagation(double[] input) {
+        return propagation(input, new double[layers[layers.length - 1].neurons]);
+    }
+
+    public double[] propagation(double[] input, double[] output) {
+        if(input.length != layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(output.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        double[] result = BufferLayer.propagation(layers, activationFunction, outputs.get(), input);
+        System.arraycopy(result, 0, output, 0, output.length);
+
+        return output;
+    }
+}
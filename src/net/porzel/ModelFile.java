@@ -0,0 +1,241 @@
+package net.porzel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary model format. All values are little-endian:
+ * <pre>
+ * int     magic "NNET"
+ * int     format version
+ * int     number of layers, including the input layer
+ * int[]   neurons of every layer
+ * int     activation function id
+ * int     weight initialization id
+ * padding to a multiple of 8 bytes
+ * double  learning rate
+ * per layer: double[neurons * inputs] row-major weights, double[neurons] biases
+ * </pre>
+ * The parameter blocks are 8 byte aligned, so they can be used straight from a memory mapped file.
+ * */
+final class ModelFile {
+    static final int MAGIC = 0x54454E4E, VERSION = 1;
+    private static final int CHUNK = 1 << 16;
+
+    final int[] neurons;
+    final int activationFunction, weightInitialization;
+    final double learningRate;
+    final long[] weightsPosition, biasesPosition;
+
+    private ModelFile(int[] neurons, int activationFunction, int weightInitialization, double learningRate) {
+        this.neurons = neurons;
+        this.activationFunction = activationFunction;
+        this.weightInitialization = weightInitialization;
+        this.learningRate = learningRate;
+
+        weightsPosition = new long[neurons.length - 1];
+        biasesPosition = new long[neurons.length - 1];
+
+        long position = headerSize(neurons.length);
+
+        for (int layer = 0; layer < neurons.length - 1; layer++) {
+            weightsPosition[layer] = position;
+            position += (long) neurons[layer] * neurons[layer + 1] * Double.BYTES;
+
+            biasesPosition[layer] = position;
+            position += (long) neurons[layer + 1] * Double.BYTES;
+        }
+    }
+
+    private static int headerSize(int layers) {
+        return ((5 + layers) * Integer.BYTES + 7) / 8 * 8 + Double.BYTES;
+    }
+
+    static void write(Path path, Layer[] layers, int activationFunction, int weightInitialization, double learningRate) throws IOException {
+        int[] neurons = new int[layers.length + 1];
+        neurons[0] = layers[0].inputs;
+
+        for (int layer = 0; layer < layers.length; layer++)
+            neurons[layer + 1] = layers[layer].neurons;
+
+        ModelFile modelFile = new ModelFile(neurons, activationFunction, weightInitialization, learningRate);
+
+        //A NEW FILE IS RENAMED OVER THE OLD ONE, SO PROCESSES THAT MAP THE OLD FILE KEEP READING IT UNCHANGED
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(headerSize(neurons.length)).order(ByteOrder.LITTLE_ENDIAN);
+
+            header.putInt(MAGIC).putInt(VERSION).putInt(neurons.length);
+
+            for (int size : neurons)
+                header.putInt(size);
+
+            header.putInt(activationFunction).putInt(weightInitialization);
+            header.putDouble(header.capacity() - Double.BYTES, learningRate);
+            header.rewind();
+
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int layer = 0; layer < layers.length; layer++) {
+                channel.position(modelFile.weightsPosition[layer]);
+                write(channel, chunk, layers[layer].weights);
+
+                channel.position(modelFile.biasesPosition[layer]);
+                write(channel, chunk, layers[layer].biases);
+            }
+
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer chunk, double[] values) throws IOException {
+        for (int offset = 0; offset < values.length; offset += CHUNK) {
+            int length = Math.min(CHUNK, values.length - offset);
+
+            chunk.clear();
+            chunk.asDoubleBuffer().put(values, offset, length);
+            chunk.limit(length * Double.BYTES);
+
+            writeFully(channel, chunk);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    static ModelFile read(FileChannel channel) throws IOException {
+        ByteBuffer start = readFully(channel, 0, 3 * Integer.BYTES);
+
+        if(start.getInt() != MAGIC)
+            throw new RuntimeException("The given file is not a neural network model!");
+
+        int version = start.getInt();
+
+        if(version != VERSION)
+            throw new RuntimeException("The model format version " + version + " is not supported!");
+
+        int layers = start.getInt();
+
+        if(layers < 3)
+            throw new RuntimeException("The network must have at least 3 layers!");
+
+        ByteBuffer header = readFully(channel, 0, headerSize(layers));
+        header.position(3 * Integer.BYTES);
+
+        int[] neurons = new int[layers];
+
+        for (int layer = 0; layer < layers; layer++) {
+            neurons[layer] = header.getInt();
+
+            if(neurons[layer] < 1)
+                throw new RuntimeException("There cant be less than one Neuron in one Layer!");
+        }
+
+        int activationFunction = header.getInt();
+        int weightInitialization = header.getInt();
+        double learningRate = header.getDouble(header.capacity() - Double.BYTES);
+
+        ModelFile modelFile = new ModelFile(neurons, activationFunction, weightInitialization, learningRate);
+
+        if(channel.size() < modelFile.biasesPosition[layers - 2] + (long) neurons[layers - 1] * Double.BYTES)
+            throw new RuntimeException("The model file is truncated!");
+
+        return modelFile;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                throw new RuntimeException("The model file is truncated!");
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Memory maps the weights of the given layer read-only.
+     * */
+    ByteBuffer mapWeights(FileChannel channel, int layer) throws IOException {
+        return map(channel, weightsPosition[layer], (long) neurons[layer] * neurons[layer + 1]);
+    }
+
+    /**
+     * Memory maps the biases of the given layer read-only.
+     * */
+    ByteBuffer mapBiases(FileChannel channel, int layer) throws IOException {
+        return map(channel, biasesPosition[layer], neurons[layer + 1]);
+    }
+
+    /**
+     * Reads the weights of the given layer into the destination, for example a direct buffer off-heap.
+     * */
+    void readWeights(FileChannel channel, int layer, ByteBuffer destination) throws IOException {
+        readFully(channel, weightsPosition[layer], destination);
+    }
+
+    /**
+     * Reads the biases of the given layer into the destination.
+     * */
+    void readBiases(FileChannel channel, int layer, ByteBuffer destination) throws IOException {
+        readFully(channel, biasesPosition[layer], destination);
+    }
+
+    private static void readFully(FileChannel channel, long position, ByteBuffer destination) throws IOException {
+        destination.clear();
+
+        while (destination.hasRemaining()) {
+            if(channel.read(destination, position + destination.position()) < 0)
+                throw new RuntimeException("The model file is truncated!");
+        }
+
+        destination.clear();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long values) throws IOException {
+        if(values * Double.BYTES > Integer.MAX_VALUE)
+            throw new RuntimeException("A layer cant be larger than 2 GB to be memory mapped!");
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, values * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    Layer[] readLayers(FileChannel channel) throws IOException {
+        Layer[] layers = new Layer[neurons.length - 1];
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer] = new Layer(neurons[layer], neurons[layer + 1]);
+
+            mapWeights(channel, layer).asDoubleBuffer().get(layers[layer].weights);
+            mapBiases(channel, layer).asDoubleBuffer().get(layers[layer].biases);
+        }
+
+        return layers;
+    }
+
+    static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+}
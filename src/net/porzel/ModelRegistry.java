@@ -0,0 +1,462 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hosts many models saved with NeuralNetwork.save for inference. Models are registered by name and
+ * only loaded when they are first used. Once the loaded models exceed the memory budget, the least
+ * recently used ones are evicted and loaded again on their next use.
+ * <p>
+ * Layers with identical weights and biases, like the frozen base layers of fine-tuned variants, are
+ * pooled and held in memory only once for all models that use them, and the memory budget counts
+ * every pooled layer once. An ensemble evaluates its models layer by layer, so the activations of a
+ * layer are still in cache when the next model reads them, and a pooled layer that receives the same
+ * input in several models is only computed once.
+ * */
+public final class ModelRegistry {
+    private final long memoryBudget;
+
+    private final Map<String, Source> sources = new HashMap<>();
+    private final LinkedHashMap<String, Model> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<PooledLayer, PooledLayer> pool = new HashMap<>();
+    private long memoryUsage = 0;
+    private int loads = 0, evictions = 0;
+
+    private final ThreadLocal<double[][]> outputs = ThreadLocal.withInitial(() -> new double[0][]);
+
+    /**
+     * Creates a registry that holds at most memoryBudget bytes of weights and biases in memory.
+     * */
+    public ModelRegistry(long memoryBudget) {
+        if(memoryBudget < 1)
+            throw new RuntimeException("The memory budget must be at least 1 byte!");
+
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Registers the model file under the given name without loading it.
+     * */
+    public synchronized ModelRegistry register(String name, Path path) {
+        return register(name, path, null);
+    }
+
+    /**
+     * Registers a model file with a custom activation function, or overrides the saved activation function.
+     * */
+    public synchronized ModelRegistry register(String name, Path path, ActivationFunction activationFunction) {
+        if(sources.containsKey(name))
+            throw new RuntimeException("There is already a model with the name " + name + "!");
+
+        sources.put(name, new Source(path, activationFunction));
+        return this;
+    }
+
+    /**
+     * Removes the model and releases its memory.
+     * */
+    public synchronized void unregister(String name) {
+        if(sources.remove(name) == null)
+            throw new RuntimeException("There is no model with the name " + name + "!");
+
+        Model model = loaded.remove(name);
+
+        if(model != null)
+            release(model);
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Returns the bytes of weights and biases of the loaded models, pooled layers counted once.
+     * */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    public synchronized int getLoadedModels() {
+        return loaded.size();
+    }
+
+    /**
+     * Returns the number of layers in memory, which is lower than the sum over the loaded models if
+     * models share layers.
+     * */
+    public synchronized int getPooledLayers() {
+        return pool.size();
+    }
+
+    public synchronized int getLoads() {
+        return loads;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    public double[] propagation(String name, double[] input) {
+        return average(new String[] { name }, input);
+    }
+
+    /**
+     * Propagates the input through all given models and returns the average of their outputs.
+     * */
+    public double[] average(String[] names, double[] input) {
+        Model[] models = acquire(names);
+        double[][] outputs = evaluate(models, input);
+        double[] average = new double[outputs[0].length];
+
+        for (double[] output : outputs) {
+            for (int neuron = 0; neuron < average.length; neuron++)
+                average[neuron] += output[neuron];
+        }
+
+        for (int neuron = 0; neuron < average.length; neuron++)
+            average[neuron] /= outputs.length;
+
+        return average;
+    }
+
+    /**
+     * Propagates the input through all given models, lets every model vote for its output neuron with
+     * the highest value and returns the neuron with the most votes, the lowest one on a tie.
+     * */
+    public int vote(String[] names, double[] input) {
+        Model[] models = acquire(names);
+        double[][] outputs = evaluate(models, input);
+        int[] votes = new int[outputs[0].length];
+
+        for (double[] output : outputs) {
+            int best = 0;
+
+            for (int neuron = 1; neuron < output.length; neuron++) {
+                if(output[neuron] > output[best])
+                    best = neuron;
+            }
+
+            votes[best]++;
+        }
+
+        int winner = 0;
+
+        for (int neuron = 1; neuron < votes.length; neuron++) {
+            if(votes[neuron] > votes[winner])
+                winner = neuron;
+        }
+
+        return winner;
+    }
+
+    /**
+     * Returns the outputs of all models for the input. The models are evaluated layer by layer, and a
+     * layer that an earlier model already computed for the same input is reused instead of computed again.
+     * */
+    private double[][] evaluate(Model[] models, double[] input) {
+        int depth = 0, slots = 0;
+
+        for (Model model : models) {
+            if(input.length != model.layers[0].inputs)
+                throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+            if(model.layers[model.layers.length - 1].neurons != models[0].layers[models[0].layers.length - 1].neurons)
+                throw new RuntimeException("The models of an ensemble must have the same number of output-neurons!");
+
+            depth = Math.max(depth, model.layers.length);
+            slots += model.layers.length;
+        }
+
+        double[][] buffers = outputs.get();
+
+        if(buffers.length < slots) {
+            buffers = Arrays.copyOf(buffers, slots);
+            outputs.set(buffers);
+        }
+
+        double[][] current = new double[models.length][], inputs = new double[models.length][];
+        int[] slot = new int[models.length];
+
+        Arrays.fill(current, input);
+
+        for (int model = 1; model < models.length; model++)
+            slot[model] = slot[model - 1] + models[model - 1].layers.length;
+
+        //INTERLEAVED PROPAGATION
+        for (int layer = 0; layer < depth; layer++) {
+            System.arraycopy(current, 0, inputs, 0, models.length);
+
+            for (int model = 0; model < models.length; model++) {
+                if(layer >= models[model].layers.length)
+                    continue;
+
+                Layer weights = models[model].layers[layer];
+                double[] shared = null;
+
+                for (int other = 0; other < model && shared == null; other++) {
+                    if(layer < models[other].layers.length && models[other].layers[layer] == weights && inputs[other] == inputs[model]
+                            && sameFunction(models[other].activationFunction, models[model].activationFunction))
+                        shared = current[other];
+                }
+
+                if(shared == null) {
+                    shared = buffers[slot[model] + layer];
+
+                    if(shared == null || shared.length != weights.neurons)
+                        shared = buffers[slot[model] + layer] = new double[weights.neurons];
+
+                    weights.propagation(inputs[model], shared);
+                    models[model].activationFunction.function(shared);
+                }
+
+                current[model] = shared;
+            }
+        }
+
+        double[][] result = new double[models.length][];
+
+        for (int model = 0; model < models.length; model++)
+            result[model] = current[model].clone();
+
+        return result;
+    }
+
+    private static boolean sameFunction(ActivationFunction a, ActivationFunction b) {
+        return a == b || (a.getId() != ActivationFunction.CUSTOM && a.getId() == b.getId());
+    }
+
+    /**
+     * Returns the loaded models with the given names, loading the missing ones and evicting the least
+     * recently used models that are not requested while the memory budget is exceeded. The model files
+     * are read without holding the lock, so a cold load doesnt block the models that are in memory. If
+     * the requested models together dont fit into the memory budget, it fails before anything is
+     * loaded or evicted and leaves the registry unchanged.
+     * */
+    private Model[] acquire(String[] names) {
+        if(names.length == 0)
+            throw new RuntimeException("At least one model is needed!");
+
+        while (true) {
+            Map<String, Source> missing = new HashMap<>();
+
+            synchronized (this) {
+                Model[] models = new Model[names.length];
+
+                for (int model = 0; model < names.length; model++) {
+                    models[model] = loaded.get(names[model]);
+
+                    if(models[model] == null) {
+                        Source source = sources.get(names[model]);
+
+                        if(source == null)
+                            throw new RuntimeException("There is no model with the name " + names[model] + "!");
+
+                        missing.put(names[model], source);
+                    }
+                }
+
+                if(missing.isEmpty())
+                    return models;
+            }
+
+            Map<String, Model> read = new HashMap<>();
+
+            for (Map.Entry<String, Source> entry : missing.entrySet())
+                read.put(entry.getKey(), read(entry.getKey(), entry.getValue()));
+
+            synchronized (this) {
+                Model[] models = insert(names, missing, read);
+
+                //A MODEL THAT WAS EVICTED OR REGISTERED AGAIN WHILE THE FILES WERE READ IS LOOKED UP AGAIN
+                if(models != null)
+                    return models;
+            }
+        }
+    }
+
+    /**
+     * Reads the layers of a model file and computes their pool keys.
+     * */
+    private static Model read(String name, Source source) {
+        Layer[] layers;
+        ActivationFunction activationFunction = source.activationFunction;
+
+        try (FileChannel channel = ModelFile.open(source.path)) {
+            ModelFile modelFile = ModelFile.read(channel);
+            layers = modelFile.readLayers(channel);
+
+            if(activationFunction == null) {
+                if(modelFile.activationFunction == ActivationFunction.CUSTOM)
+                    throw new RuntimeException("The model " + name + " needs a custom activation function!");
+
+                activationFunction = ActivationFunction.byId(modelFile.activationFunction);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Loading the model " + name + " failed!", e);
+        }
+
+        PooledLayer[] pooledLayers = new PooledLayer[layers.length];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            pooledLayers[layer] = new PooledLayer(layers[layer]);
+
+        return new Model(layers, pooledLayers, activationFunction);
+    }
+
+    /**
+     * Inserts the read models and evicts other models until the memory budget is met. Returns null if
+     * a requested model is neither loaded nor read from its current source.
+     * */
+    private Model[] insert(String[] names, Map<String, Source> missing, Map<String, Model> read) {
+        Model[] models = new Model[names.length];
+        Map<String, Model> added = new HashMap<>();
+
+        for (int model = 0; model < names.length; model++) {
+            models[model] = loaded.get(names[model]);
+
+            if(models[model] == null)
+                models[model] = added.get(names[model]);
+
+            if(models[model] == null) {
+                Source source = sources.get(names[model]);
+
+                if(source == null)
+                    throw new RuntimeException("There is no model with the name " + names[model] + "!");
+
+                if(missing.get(names[model]) != source)
+                    return null;
+
+                models[model] = read.get(names[model]);
+                added.put(names[model], models[model]);
+            }
+        }
+
+        //THE BUDGET IS CHECKED BEFORE ANYTHING CHANGES, POOLED LAYERS COUNTED ONCE
+        Map<PooledLayer, PooledLayer> required = new HashMap<>();
+        long requiredBytes = 0;
+
+        for (Model model : models) {
+            for (PooledLayer pooled : model.pooledLayers) {
+                if(required.putIfAbsent(pooled, pooled) == null)
+                    requiredBytes += pooled.bytes();
+            }
+        }
+
+        if(requiredBytes > memoryBudget)
+            throw new RuntimeException("The requested models dont fit into the memory budget!");
+
+        //POOLING OF IDENTICAL LAYERS
+        for (Map.Entry<String, Model> entry : added.entrySet()) {
+            Model model = entry.getValue();
+
+            for (int layer = 0; layer < model.layers.length; layer++) {
+                PooledLayer pooled = pool.get(model.pooledLayers[layer]);
+
+                if(pooled == null) {
+                    pooled = model.pooledLayers[layer];
+                    pool.put(pooled, pooled);
+                    memoryUsage += pooled.bytes();
+                }
+
+                pooled.references++;
+                model.pooledLayers[layer] = pooled;
+                model.layers[layer] = pooled.layer;
+            }
+
+            loaded.put(entry.getKey(), model);
+            loads++;
+        }
+
+        //LRU EVICTION, WHICH ALWAYS MEETS THE BUDGET BECAUSE THE REQUESTED MODELS FIT
+        List<String> requested = Arrays.asList(names);
+        Iterator<Map.Entry<String, Model>> iterator = loaded.entrySet().iterator();
+
+        while (memoryUsage > memoryBudget && iterator.hasNext()) {
+            Map.Entry<String, Model> entry = iterator.next();
+
+            if(requested.contains(entry.getKey()))
+                continue;
+
+            iterator.remove();
+            release(entry.getValue());
+            evictions++;
+        }
+
+        return models;
+    }
+
+    private void release(Model model) {
+        for (PooledLayer pooled : model.pooledLayers) {
+            if(--pooled.references == 0) {
+                pool.remove(pooled);
+                memoryUsage -= pooled.bytes();
+            }
+        }
+    }
+
+    private static final class Source {
+        private final Path path;
+        private final ActivationFunction activationFunction;
+
+        private Source(Path path, ActivationFunction activationFunction) {
+            this.path = path;
+            this.activationFunction = activationFunction;
+        }
+    }
+
+    private static final class Model {
+        private final Layer[] layers;
+        private final PooledLayer[] pooledLayers;
+        private final ActivationFunction activationFunction;
+
+        private Model(Layer[] layers, PooledLayer[] pooledLayers, ActivationFunction activationFunction) {
+            this.layers = layers;
+            this.pooledLayers = pooledLayers;
+            this.activationFunction = activationFunction;
+        }
+    }
+
+    /**
+     * Key of a layer in the pool, two layers are equal if their weights and biases are identical.
+     * */
+    private static final class PooledLayer {
+        private final Layer layer;
+        private final int hash;
+        private int references = 0;
+
+        private PooledLayer(Layer layer) {
+            this.layer = layer;
+            this.hash = 31 * Arrays.hashCode(layer.weights) + Arrays.hashCode(layer.biases);
+        }
+
+        private long bytes() {
+            return (long) (layer.weights.length + layer.biases.length) * Double.BYTES;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if(!(object instanceof PooledLayer))
+                return false;
+
+            PooledLayer other = (PooledLayer) object;
+
+            return layer == other.layer || (hash == other.hash && layer.inputs == other.layer.inputs && Arrays.equals(layer.weights, other.layer.weights) && Arrays.equals(layer.biases, other.layer.biases));
+        }
+    }
+}
@@ -1,155 +1,735 @@
 package net.porzel;
 
+import net.porzel.data.Dataset;
 import net.porzel.functions.ActivationFunction;
 import net.porzel.functions.WeightInitialization;
-
+import net.porzel.kernels.Kernels;
+import net.porzel.optimizers.LearningRateSchedule;
+import net.porzel.optimizers.Optimizer;
+import net.porzel.random.RandomSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
 
-public class NeuralNetwork {
-    private final double[][][] weights;
-    private final double[][] biases;
+public class NeuralNetwork implements AutoCloseable {
+    private final Layer[] layers;
     private double learningRate;
+    private Optimizer optimizer = Optimizer.SGD();
+    private LearningRateSchedule learningRateSchedule = LearningRateSchedule.CONSTANT();
+    private int batchSize = 1;
+    private double[][] batchInputs = new double[1][], batchTargets = new double[1][];
+    private double[][] streamInputs, streamTargets;
+    private double[] sparseDeltas = new double[0];
+    private int[] sparseColumns;
+    private boolean[] sparseTouched;
+    private final int[] sparseOffsets = new int[2];
+    private final double[][] sparseTarget = new double[1][];
+    private RandomGenerator random = RandomSource.create();
     private ActivationFunction activationFunction;
+    private int weightInitialization = -1;
 
     private double[][] trainingDataInput, trainingDataTarget;
+    private int[] trainingOrder;
+    private int trainingPosition;
     private double[][] testDataInput, testDataTarget;
 
     private int trainingEpochs = 0;
 
+    private final Gradient gradient;
+    private Gradient[] workerGradients;
+    private ForkJoinPool forkJoinPool;
+
+    private long updates = 0;
+    private int publishInterval = 0;
+    private volatile NeuralNetworkSnapshot snapshot;
+
+    private final ThreadLocal<Workspace> workspaces;
+
     private Thread neuralNetworkStatusPrinter;
+    private boolean statusPrinter = true;
+    private TrainingMetrics trainingMetrics;
+    private EarlyStopping earlyStopping;
+    private Checkpointing checkpointing;
+    private boolean resumed = false;
 
     public NeuralNetwork(int[] layers) {
+        this(createLayers(layers));
+
+        initialize(WeightInitialization.XAVIER());
+    }
+
+    /**
+     * Creates a network whose weight initialization and sampling of training data are derived from
+     * the seed, so two networks created with the same seed and trained the same way are identical.
+     * */
+    public NeuralNetwork(int[] layers, long seed) {
+        this(createLayers(layers));
+
+        random = RandomSource.create(seed);
+        initialize(WeightInitialization.XAVIER());
+    }
+
+    NeuralNetwork(Layer[] layers) {
+        this.layers = layers;
+
+        workspaces = ThreadLocal.withInitial(() -> new Workspace(this.layers));
+
+        gradient = new Gradient(this.layers);
+        workerGradients = new Gradient[] { gradient };
+    }
+
+    private static Layer[] createLayers(int[] layers) {
         if(layers.length < 3)
             throw new RuntimeException("The network must have at least 3 layers!");
 
-        weights = new double[layers.length - 1][][];
-        biases = new double[layers.length - 1][];
+        Layer[] created = new Layer[layers.length - 1];
 
         for (int layer = 0; layer < layers.length - 1; layer++) {
-            if(layers[layer] < 1)
+            if(layers[layer] < 1 || layers[layer + 1] < 1)
                 throw new RuntimeException("There cant be less than one Neuron in one Layer!");
 
-            weights[layer] = new double[layers[layer + 1]][layers[layer]];
-            biases[layer] = new double[layers[layer + 1]];
+            created[layer] = new Layer(layers[layer], layers[layer + 1]);
         }
 
-        WeightInitialization weightInitialization = WeightInitialization.XAVIER();
+        return created;
+    }
+
+    private void initialize(WeightInitialization weightInitialization) {
+        double[][] weights = new double[layers.length][];
+        double[][] biases = new double[layers.length][];
+        int[] neurons = new int[layers.length];
 
-        weightInitialization.function(weights);
-        weightInitialization.function(biases);
+        for (int layer = 0; layer < layers.length; layer++) {
+            weights[layer] = layers[layer].weights;
+            biases[layer] = layers[layer].biases;
+            neurons[layer] = layers[layer].neurons;
+        }
+
+        weightInitialization.function(weights, neurons, random);
+        weightInitialization.function(biases, random);
+
+        this.weightInitialization = weightInitialization.getId();
+    }
+
+    /**
+     * Saves the weights, biases, activation function and learning rate in the binary model format,
+     * which can be read back with load or memory mapped with MappedNeuralNetwork.open. The model is
+     * written to a temporary file that replaces the target atomically, so networks that have mapped
+     * the previous file keep serving its weights.
+     * */
+    public void save(Path path) throws IOException {
+        int activationFunctionId = activationFunction == null ? ActivationFunction.CUSTOM : activationFunction.getId();
+
+        ModelFile.write(path, layers, activationFunctionId, weightInitialization, learningRate);
+    }
+
+    /**
+     * Loads a network saved with save. Models with a custom activation function need it to be set
+     * with setActivationFunction before they can be used.
+     * */
+    public static NeuralNetwork load(Path path) throws IOException {
+        try (FileChannel channel = ModelFile.open(path)) {
+            ModelFile modelFile = ModelFile.read(channel);
+            NeuralNetwork neuralNetwork = new NeuralNetwork(modelFile.readLayers(channel)).setLearningRate(modelFile.learningRate);
+
+            if(modelFile.activationFunction != ActivationFunction.CUSTOM)
+                neuralNetwork.setActivationFunction(ActivationFunction.byId(modelFile.activationFunction));
+
+            neuralNetwork.weightInitialization = modelFile.weightInitialization;
+
+            return neuralNetwork;
+        }
+    }
+
+    /**
+     * Compiles the current weights into an evaluator that is specialized for the layer sizes and the
+     * activation function of this network. Later training does not change the compiled evaluator.
+     * */
+    public CompiledNeuralNetwork compile() {
+        return new CompiledNeuralNetwork(layers, activationFunction);
+    }
+
+    /**
+     * Quantizes the current weights to int8 for inference. The calibration inputs should be
+     * representative samples, they determine the ranges of the quantized layer inputs.
+     * */
+    public QuantizedNeuralNetwork quantize(double[][] calibration) {
+        return new QuantizedNeuralNetwork(this, calibration);
     }
 
     public NeuralNetwork setActivationFunction(ActivationFunction activationFunction) {
         this.activationFunction = activationFunction;
+
+        if(publishInterval > 0)
+            publish();
+
         return this;
     }
 
+    Layer[] getLayers() {
+        return layers;
+    }
+
+    ActivationFunction getActivationFunction() {
+        return activationFunction;
+    }
+
+    double getLearningRate() {
+        return learningRate;
+    }
+
     public NeuralNetwork setLearningRate(double learningRate) {
         this.learningRate = learningRate;
         return this;
     }
 
+    /**
+     * Scales the learning rate depending on the number of updates, by default it stays constant.
+     * */
+    public NeuralNetwork setLearningRateSchedule(LearningRateSchedule learningRateSchedule) {
+        this.learningRateSchedule = learningRateSchedule;
+        return this;
+    }
+
+    /**
+     * Sets the rule that applies the gradients to the weights and biases, by default Optimizer.SGD().
+     * The optimizer keeps state for this network and must not be shared with other networks.
+     * */
+    public NeuralNetwork setOptimizer(Optimizer optimizer) {
+        optimizer.reset();
+
+        this.optimizer = optimizer;
+        return this;
+    }
+
+    /**
+     * Reseeds the generator used for the sampling of training data and later weight initializations.
+     * */
+    public NeuralNetwork setSeed(long seed) {
+        this.random = RandomSource.create(seed);
+        return this;
+    }
+
+    /**
+     * Number of samples whose gradients are summed up before the weights and biases are updated
+     * once with their average. A batch size of 1 updates the network after every sample.
+     * */
+    public NeuralNetwork setBatchSize(int batchSize) {
+        if(batchSize < 1)
+            throw new RuntimeException("The batch size must be at least 1!");
+
+        this.batchSize = batchSize;
+        this.batchInputs = new double[batchSize][];
+        this.batchTargets = new double[batchSize][];
+        return this;
+    }
+
+    /**
+     * Splits every batch across the given number of worker threads of a ForkJoinPool. Each worker
+     * accumulates into its own gradient buffer and the buffers are summed up in a fixed binary tree,
+     * so the result of a batch only depends on its samples and the number of threads, never on the
+     * scheduling of the workers.
+     * */
+    public NeuralNetwork setThreads(int threads) {
+        if(threads < 1)
+            throw new RuntimeException("There must be at least one training thread!");
+
+        if(forkJoinPool != null)
+            forkJoinPool.shutdown();
+
+        forkJoinPool = threads > 1 ? new ForkJoinPool(threads) : null;
+
+        workerGradients = new Gradient[threads];
+        workerGradients[0] = gradient;
+
+        for (int worker = 1; worker < threads; worker++)
+            workerGradients[worker] = new Gradient(layers);
+
+        return this;
+    }
+
+    /**
+     * Shuts down the worker threads of setThreads, the validation thread of early stopping and the
+     * writer thread of checkpointing. The network can still be used afterwards, it then trains on the
+     * calling thread until setThreads is called again.
+     * */
+    @Override
+    public void close() {
+        if(forkJoinPool != null) {
+            forkJoinPool.shutdown();
+            forkJoinPool = null;
+        }
+
+        workerGradients = new Gradient[] { gradient };
+
+        if(earlyStopping != null)
+            earlyStopping.close();
+
+        if(checkpointing != null)
+            checkpointing.close();
+    }
+
+    /**
+     * Enables or disables the console progress bar and the final accuracy pass of train.
+     * */
+    public NeuralNetwork setStatusPrinter(boolean statusPrinter) {
+        this.statusPrinter = statusPrinter;
+        return this;
+    }
+
+    /**
+     * Collects training metrics into the given object, or stops collecting them if it is null.
+     * */
+    public NeuralNetwork setTrainingMetrics(TrainingMetrics trainingMetrics) {
+        this.trainingMetrics = trainingMetrics;
+        return this;
+    }
+
+    /**
+     * Validates the network on the test data in the background during training and stops the
+     * training early once the validation loss stops improving, or never stops early if it is null.
+     * */
+    public NeuralNetwork setEarlyStopping(EarlyStopping earlyStopping) {
+        this.earlyStopping = earlyStopping;
+        return this;
+    }
+
+    /**
+     * Writes checkpoints of the weights and the optimizer state in the background while training.
+     * */
+    public NeuralNetwork setCheckpointing(Checkpointing checkpointing) {
+        this.checkpointing = checkpointing;
+        return this;
+    }
+
+    /**
+     * Continues from the checkpoint at the given path: the weights, the optimizer state, the number of
+     * updates for the learning rate schedule and the number of trained samples are restored, so a
+     * following train(epochs) only trains the remaining samples. Returns false if there is no
+     * checkpoint yet. The network must have the same layers and optimizer as the checkpointed one.
+     * */
+    public boolean resume(Path path) throws IOException {
+        CheckpointFile checkpoint = Checkpointing.read(path);
+
+        if(checkpoint == null)
+            return false;
+
+        checkpoint.restore(layers, optimizer);
+
+        updates = checkpoint.updates;
+        trainingEpochs = checkpoint.trainingEpochs;
+        resumed = true;
+
+        if(publishInterval > 0)
+            publish();
+
+        return true;
+    }
+
     public NeuralNetwork setWeightInitializationFunction(WeightInitialization weightInitialization) {
-        weightInitialization.function(weights);
-        weightInitialization.function(biases);
+        initialize(weightInitialization);
+
+        if(publishInterval > 0)
+            publish();
+
+        return this;
+    }
+
+    /**
+     * Enables concurrent inference. Every publishInterval weight updates the trainer publishes an
+     * immutable snapshot of the network through a volatile reference, and propagation is served from
+     * the latest snapshot instead of the weights that are being trained. Readers never block and never
+     * see partially updated weights. An interval of 0 disables concurrent inference again.
+     * */
+    public NeuralNetwork setConcurrentInference(int publishInterval) {
+        if(publishInterval < 0)
+            throw new RuntimeException("The publish interval cant be negative!");
+
+        this.publishInterval = publishInterval;
+        snapshot = null;
+
+        if(publishInterval > 0)
+            publish();
 
         return this;
     }
 
+    /**
+     * Publishes the current weights as the snapshot that propagation serves. Training publishes every
+     * publishInterval updates and when it ends, callers that drive backPropagation directly can use
+     * this to make their latest updates visible.
+     * */
+    public void publish() {
+        if(publishInterval == 0)
+            throw new RuntimeException("Concurrent inference is not enabled!");
+
+        snapshot = new NeuralNetworkSnapshot(layers, activationFunction, workspaces, updates);
+    }
+
+    /**
+     * Returns the latest published snapshot or null if concurrent inference is disabled.
+     * */
+    public NeuralNetworkSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     public double[] propagation(double[] input) {
-        if(input.length != weights[0][0].length)
+        return propagation(input, new double[layers[layers.length - 1].neurons]);
+    }
+
+    /**
+     * Writes the output of the network into the given output array and returns it. Apart from the
+     * caller owned arrays only a workspace of the calling thread is used, so nothing is allocated.
+     * */
+    public double[] propagation(double[] input, double[] output) {
+        NeuralNetworkSnapshot published = snapshot;
+
+        if(published != null)
+            return published.propagation(input, output);
+
+        if(input.length != layers[0].inputs)
             throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
 
-        for (int layer = 0; layer < weights.length; layer++) {
-            double[] temp = new double[weights[layer].length];
-            Arrays.fill(temp, 0);
+        if(output.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
 
-            for (int neuron = 0; neuron < weights[layer].length; neuron++) {
-                for (int weight = 0; weight < weights[layer][neuron].length; weight++) {
-                    temp[neuron] += input[weight] * weights[layer][neuron][weight];
-                }
-                temp[neuron] += biases[layer][neuron];
+        double[] result = workspaces.get().propagation(layers, activationFunction, input);
+        System.arraycopy(result, 0, output, 0, output.length);
+
+        return output;
+    }
+
+    /**
+     * Propagates a sparse input that is zero except for values[i] at the input indices[i]. The first
+     * layer only reads the weights of those inputs, so its cost is proportional to the number of
+     * non-zero values instead of the number of inputs.
+     * */
+    public double[] propagation(int[] indices, double[] values) {
+        return propagation(indices, values, new double[layers[layers.length - 1].neurons]);
+    }
+
+    public double[] propagation(int[] indices, double[] values, double[] output) {
+        NeuralNetworkSnapshot published = snapshot;
+
+        if(published != null)
+            return published.propagation(indices, values, output);
+
+        return Layer.propagation(layers, activationFunction, workspaces.get(), indices, values, output);
+    }
+
+    /**
+     * Propagates every row of a sparse batch and returns the outputs of all rows row-major in one array.
+     * */
+    public double[] batchPropagation(SparseBatch batch) {
+        NeuralNetworkSnapshot published = snapshot;
+
+        if(published != null)
+            return published.batchPropagation(batch);
+
+        return Layer.propagation(layers, activationFunction, workspaces.get(), batch);
+    }
+
+    /**
+     * Propagates a whole batch of inputs at once. Every layer is computed as a cache blocked
+     * matrix-matrix product over the batch, so the weights are read once per batch instead of
+     * once per input.
+     * */
+    public double[][] batchPropagation(double[][] input) {
+        NeuralNetworkSnapshot published = snapshot;
+
+        if(published != null)
+            return published.batchPropagation(input);
+
+        return Layer.propagation(layers, activationFunction, input);
+    }
+
+    /**
+     * Batched propagation over rows inputs stored row-major in one array. Returns the outputs
+     * of all rows row-major in one array.
+     * */
+    public double[] batchPropagation(double[] input, int rows) {
+        NeuralNetworkSnapshot published = snapshot;
+
+        if(published != null)
+            return published.batchPropagation(input, rows);
+
+        return Layer.propagation(layers, activationFunction, input, rows);
+    }
+
+    public void backPropagation(double[] input, double[] targetOutput) {
+        long allocationStart = trainingMetrics == null ? 0 : trainingMetrics.allocatedBytes();
+
+        gradient.clear();
+        accumulateGradient(input, targetOutput, gradient);
+        trainingEpochs += 1;
+
+        applyGradient(gradient, 1);
+
+        if(trainingMetrics != null)
+            recordMetrics(1, allocationStart, true);
+    }
+
+    /**
+     * Trains on a sparse input that is zero except for values[i] at the input indices[i]. The weights
+     * of the first layer are only read and updated in the columns of those inputs, and the optimizer
+     * only advances the state of those columns. Custom optimizers need to support sparse updates.
+     * */
+    public void backPropagation(int[] indices, double[] values, double[] targetOutput) {
+        Layer.checkSparse(layers[0], indices, values, 0, indices.length);
+
+        sparseOffsets[1] = indices.length;
+        sparseTarget[0] = targetOutput;
+
+        trainSparse(indices, values, sparseOffsets, sparseTarget, 1);
+    }
+
+    /**
+     * Trains on every row of a sparse batch with one update, like a batch of dense inputs.
+     * */
+    public void backPropagation(SparseBatch batch, double[][] targetOutputs) {
+        if(batch.rows != targetOutputs.length)
+            throw new RuntimeException("The given batch length doesnt match with the target values!");
+
+        if(batch.rows == 0)
+            return;
+
+        Layer.checkSparse(layers[0], batch.indices, batch.values, 0, batch.indices.length);
+
+        trainSparse(batch.indices, batch.values, batch.offsets, targetOutputs, batch.rows);
+    }
+
+    private void trainSparse(int[] indices, double[] values, int[] offsets, double[][] targetOutputs, int rows) {
+        long allocationStart = trainingMetrics == null ? 0 : trainingMetrics.allocatedBytes();
+        Layer first = layers[0], firstGradient = gradient.layers[0];
+
+        if(sparseDeltas.length < rows * first.neurons)
+            sparseDeltas = new double[rows * first.neurons];
+
+        if(sparseTouched == null) {
+            sparseTouched = new boolean[first.inputs];
+            sparseColumns = new int[first.inputs];
+        }
+
+        //COLUMNS OF THE FIRST LAYER THAT THE BATCH TOUCHES
+        int columns = 0;
+
+        for (int i = 0; i < offsets[rows]; i++) {
+            if(!sparseTouched[indices[i]]) {
+                sparseTouched[indices[i]] = true;
+                sparseColumns[columns++] = indices[i];
             }
+        }
 
-            activationFunction.function(temp);
+        for (int column = 0; column < columns; column++) {
+            sparseTouched[sparseColumns[column]] = false;
 
-            input = temp.clone();
+            for (int offset = sparseColumns[column]; offset < firstGradient.weights.length; offset += first.inputs)
+                firstGradient.weights[offset] = 0;
         }
 
-        return input;
+        gradient.clearDense();
+
+        for (int row = 0; row < rows; row++) {
+            accumulateSparse(indices, values, offsets[row], offsets[row + 1], targetOutputs[row], row);
+            firstGradient.addSparse(1, sparseDeltas, row * first.neurons, indices, values, offsets[row], offsets[row + 1]);
+        }
+
+        trainingEpochs += rows;
+
+        applyGradient(gradient, 1.0 / rows, sparseColumns, columns);
+
+        if(trainingMetrics != null)
+            recordMetrics(rows, allocationStart, false);
     }
 
-    public void backPropagation(double[] input, double[] targetOutput) {
-        if(input.length != weights[0][0].length)
+    private void accumulateSparse(int[] indices, double[] values, int from, int to, double[] targetOutput, int row) {
+        if(targetOutput.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given target output length doesnt match with the number of output-neurons!");
+
+        Workspace workspace = workspaces.get();
+
+        //PROPAGATION
+        workspace.propagation(layers, activationFunction, indices, values, from, to, trainingMetrics != null ? gradient.forwardNanos : null);
+
+        backward(workspace, null, targetOutput, gradient);
+
+        System.arraycopy(workspace.deltas[0], 0, sparseDeltas, row * layers[0].neurons, layers[0].neurons);
+    }
+
+    private void accumulateGradient(double[] input, double[] targetOutput, Gradient gradient) {
+        if(input.length != layers[0].inputs)
             throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
 
-        if(targetOutput.length != weights[weights.length - 1].length)
+        if(targetOutput.length != layers[layers.length - 1].neurons)
             throw new RuntimeException("The given target output length doesnt match with the number of output-neurons!");
 
-        double[][] outputs = new double[weights.length][];
+        Workspace workspace = workspaces.get();
 
-        for (int layer = 0; layer < outputs.length; layer++)
-            outputs[layer] = new double[weights[layer].length];
+        //PROPAGATION
+        if(trainingMetrics != null)
+            workspace.propagation(layers, activationFunction, input, gradient.forwardNanos);
+        else
+            workspace.propagation(layers, activationFunction, input);
 
-        double[] tempInput = input.clone();
+        backward(workspace, input, targetOutput, gradient);
+    }
 
-        //PROPAGATION
-        for (int layer = 0; layer < weights.length; layer++) {
-            double[] tempOutput = new double[weights[layer].length];
-            Arrays.fill(tempOutput, 0);
+    /**
+     * Backpropagates the outputs in the workspace into the gradient. Without an input the weight
+     * gradient of the first layer is skipped, its delta is left in the workspace instead.
+     * */
+    private void backward(Workspace workspace, double[] input, double[] targetOutput, Gradient gradient) {
+        Kernels kernels = Kernels.get();
+        double[][] outputs = workspace.outputs;
+        double[][] neuronError = workspace.errors;
+        double[][] deltas = workspace.deltas;
 
-            for (int neuron = 0; neuron < weights[layer].length; neuron++) {
-                for (int weight = 0; weight < weights[layer][neuron].length; weight++) {
-                    tempOutput[neuron] += tempInput[weight] * weights[layer][neuron][weight];
-                }
-                tempOutput[neuron] += biases[layer][neuron];
+        boolean timed = trainingMetrics != null;
+
+        //BACKPROPAGATION
+        //ERROR CALCULATING OUTPUT LAYER
+        int outputLayer = layers.length - 1;
+
+        for (int neuron = 0; neuron < layers[outputLayer].neurons; neuron++) {
+            neuronError[outputLayer][neuron] = targetOutput[neuron] - outputs[outputLayer][neuron];
+            gradient.squaredError += neuronError[outputLayer][neuron] * neuronError[outputLayer][neuron];
+        }
+
+        for (int layer = outputLayer; layer >= 0; layer--) {
+            long start = timed ? System.nanoTime() : 0;
+            Layer current = layers[layer];
+            Layer currentGradient = gradient.layers[layer];
+            double[] layerInput = layer == 0 ? input : outputs[layer - 1];
+
+            //ERROR CALCULATING HIDDEN LAYER
+            if(layer < outputLayer) {
+                Layer next = layers[layer + 1];
+
+                Arrays.fill(neuronError[layer], 0);
+
+                for (int neuronNextLayer = 0, offset = 0; neuronNextLayer < next.neurons; neuronNextLayer++, offset += next.inputs)
+                    kernels.axpy(neuronError[layer + 1][neuronNextLayer], next.weights, offset, neuronError[layer], 0, current.neurons);
+            }
+
+            //DELTA
+            double[] delta = deltas[layer];
+
+            activationFunction.derivative(outputs[layer], delta);
+
+            for (int neuron = 0; neuron < current.neurons; neuron++)
+                delta[neuron] *= neuronError[layer][neuron];
+
+            //GRADIENT (OUTER PRODUCT OF DELTA AND LAYER INPUT)
+            if(layerInput != null) {
+                for (int neuron = 0, offset = 0; neuron < current.neurons; neuron++, offset += current.inputs)
+                    kernels.axpy(delta[neuron], layerInput, 0, currentGradient.weights, offset, current.inputs);
             }
 
-            activationFunction.function(tempOutput);
+            kernels.axpy(1, delta, 0, currentGradient.biases, 0, current.neurons);
 
-            tempInput = tempOutput.clone();
-            outputs[layer] = tempOutput.clone();
+            if(timed)
+                gradient.backwardNanos[layer] += System.nanoTime() - start;
         }
+    }
 
-        //BACKPROPAGATION
-        double[][] neuronError = new double[weights.length][];
+    private void applyGradient(Gradient gradient, double scale) {
+        applyGradient(gradient, scale, null, 0);
+    }
+
+    /**
+     * Applies the gradient with the optimizer. With columns only the given columns of the first layer
+     * weights are updated, which is all that sparse training has computed.
+     * */
+    private void applyGradient(Gradient gradient, double scale, int[] columns, int count) {
+        long step = updates + 1;
+        double currentLearningRate = learningRateSchedule.learningRate(learningRate, step);
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            if(layer == 0 && columns != null)
+                optimizer.update(0, layers[0].weights, gradient.layers[0].weights, scale, currentLearningRate, step, layers[0].inputs, columns, count);
+            else
+                optimizer.update(2 * layer, layers[layer].weights, gradient.layers[layer].weights, scale, currentLearningRate, step);
+
+            optimizer.update(2 * layer + 1, layers[layer].biases, gradient.layers[layer].biases, scale, currentLearningRate, step);
+        }
 
-        for (int layer = 0; layer < neuronError.length; layer++)
-            neuronError[layer] = new double[weights[layer].length];
+        updates++;
 
-        //ERROR CALCULATING OUTPUT LAYER
-        for (int neuron = 0; neuron < neuronError[neuronError.length - 1].length; neuron++) {
-            //ERROR CALCULATING OUTPUT LAYER
-            neuronError[neuronError.length - 1][neuron] = (targetOutput[neuron] - outputs[outputs.length - 1][neuron]);
+        if(publishInterval > 0 && updates % publishInterval == 0)
+            publish();
+
+        if(earlyStopping != null && updates % earlyStopping.getInterval() == 0 && !earlyStopping.isValidating()) {
+            NeuralNetworkSnapshot current = snapshot;
+
+            if(current == null || current.getVersion() != updates)
+                current = new NeuralNetworkSnapshot(layers, activationFunction, workspaces, updates);
 
-            //UPDATE WEIGHTS OUTPUT LAYER
-            for (int weight = 0; weight < weights[neuronError.length - 1][neuron].length; weight++) {
-                weights[neuronError.length - 1][neuron][weight] += learningRate * neuronError[neuronError.length - 1][neuron] * outputs[neuronError.length - 1 - 1][weight] * activationFunction.derivative(outputs[outputs.length - 1][neuron]);
+            earlyStopping.validate(current, testDataInput, testDataTarget);
+        }
+
+        if(checkpointing != null && updates % checkpointing.getInterval() == 0)
+            checkpointing.checkpoint(layers, optimizer, updates, trainingEpochs);
+    }
+
+    private boolean isStopped() {
+        return earlyStopping != null && earlyStopping.isStopped();
+    }
+
+    private void startTraining() {
+        if(earlyStopping != null) {
+            if(testDataInput == null || testDataTarget == null || testDataInput.length == 0)
+                throw new RuntimeException("Early stopping needs test data!");
+
+            //THE VALIDATION RUNS IN THE BACKGROUND, SO BAD TEST DATA WOULD ONLY FAIL AT THE END OF THE TRAINING
+            for (int sample = 0; sample < testDataInput.length; sample++) {
+                if(testDataInput[sample].length != layers[0].inputs || testDataTarget[sample].length != layers[layers.length - 1].neurons)
+                    throw new RuntimeException("The test data doesnt match with the input and output neurons!");
             }
-            biases[neuronError.length - 1][neuron] += neuronError[neuronError.length - 1][neuron] * learningRate * activationFunction.derivative(outputs[outputs.length - 1][neuron]);
         }
+    }
 
+    private void completeTraining() {
+        if(earlyStopping != null) {
+            earlyStopping.await();
 
-        for (int layer = neuronError.length - 2; layer >= 0; layer--) {
-            for (int neuron = 0; neuron < neuronError[layer].length; neuron++) {
-                //ERROR CALCULATING HIDDEN LAYER
-                for (int neuronNextLayer = 0; neuronNextLayer < weights[layer + 1].length; neuronNextLayer++) {
-                    neuronError[layer][neuron] += neuronError[layer + 1][neuronNextLayer] * weights[layer + 1][neuronNextLayer][neuron];
-                }
+            NeuralNetworkSnapshot best = earlyStopping.getBestSnapshot();
 
-                //UPDATE WEIGHTS HIDDEN LAYER
-                for (int weight = 0; weight < weights[layer][neuron].length; weight++) {
-                    if(layer - 1 >= 0)
-                        weights[layer][neuron][weight] += learningRate * neuronError[layer][neuron] * outputs[layer - 1][weight] * activationFunction.derivative(outputs[layer][neuron]);
-                    else
-                        weights[layer][neuron][weight] += learningRate * neuronError[layer][neuron] * input[weight] * activationFunction.derivative(outputs[layer][neuron]);
-                }
-                biases[layer][neuron] += neuronError[layer][neuron] * learningRate * activationFunction.derivative(outputs[layer][neuron]);
+            if(earlyStopping.isRestoreBest() && best != null) {
+                for (int layer = 0; layer < layers.length; layer++)
+                    layers[layer].set(best.getLayers()[layer]);
+
+                if(publishInterval > 0)
+                    publish();
             }
         }
 
-        trainingEpochs += 1;
+        //THE LAST UPDATES SINCE THE LAST PUBLISH INTERVAL
+        if(publishInterval > 0 && snapshot.getVersion() != updates)
+            publish();
+
+        //DUE CHECKPOINTS ARE SKIPPED WHILE ONE IS WRITTEN, SO THE LAST ONE CAN BE OLDER THAN THE TRAINING
+        if(checkpointing != null) {
+            checkpointing.await();
+
+            if(checkpointing.getLastUpdate() != updates) {
+                checkpointing.checkpoint(layers, optimizer, updates, trainingEpochs);
+                checkpointing.await();
+            }
+        }
+
+        if(trainingMetrics != null)
+            trainingMetrics.completed();
+    }
+
+    private void recordMetrics(int samples, long allocationStart, boolean firstWeights) {
+        double gradientNorm = trainingMetrics.isGradientNormDue() ? gradient.norm(firstWeights) / samples : Double.NaN;
+
+        trainingMetrics.record(samples, layers[layers.length - 1].neurons, gradient.squaredError, gradientNorm, gradient.forwardNanos, gradient.backwardNanos, allocationStart);
     }
 
 
@@ -160,6 +740,11 @@ public class NeuralNetwork {
 
         trainingDataInput = input;
         trainingDataTarget = targetOutput;
+        trainingOrder = new int[input.length];
+        trainingPosition = input.length;
+
+        for (int sample = 0; sample < trainingOrder.length; sample++)
+            trainingOrder[sample] = sample;
     }
 
     public void train(long time) {
@@ -206,7 +791,7 @@ public class NeuralNetwork {
 
             @Override
             public void run() {
-                while ((System.currentTimeMillis() - startTime < time)) {
+                while (System.currentTimeMillis() - startTime < time && !isStopped()) {
                     updateProgressBar();
                 };
 
@@ -215,11 +800,16 @@ public class NeuralNetwork {
             }
         });
 
-        neuralNetworkStatusPrinter.start();
+        startTraining();
+
+        if(statusPrinter)
+            neuralNetworkStatusPrinter.start();
 
-        while (System.currentTimeMillis() - startTime < time) {
+        while (System.currentTimeMillis() - startTime < time && !isStopped()) {
             train();
         }
+
+        completeTraining();
     }
 
     public void train(int epochs) {
@@ -262,7 +852,7 @@ public class NeuralNetwork {
 
             @Override
             public void run() {
-                while (trainingEpochs < epochs) {
+                while (trainingEpochs < epochs && !isStopped()) {
                     updateProgressBar();
                 };
 
@@ -271,30 +861,170 @@ public class NeuralNetwork {
             }
         });
 
-        neuralNetworkStatusPrinter.start();
+        startTraining();
+
+        if(!resumed)
+            trainingEpochs = 0;
 
-        trainingEpochs = 0;
+        resumed = false;
 
-        while (trainingEpochs < epochs) {
+        if(statusPrinter)
+            neuralNetworkStatusPrinter.start();
+
+        while (trainingEpochs < epochs && !isStopped()) {
             train();
         }
+
+        completeTraining();
     }
 
     private void train() {
         if(trainingDataTarget == null || trainingDataInput == null)
             throw new RuntimeException("No training data given!");
 
-        int randomDataset = new Random().nextInt(trainingDataInput.length);
+        for (int sample = 0; sample < batchSize; sample++) {
+            int dataset = nextTrainingSample();
+
+            batchInputs[sample] = trainingDataInput[dataset];
+            batchTargets[sample] = trainingDataTarget[dataset];
+        }
+
+        trainBatch(batchSize);
+    }
+
+    /**
+     * Returns the training samples in shuffled epochs, every sample is visited once before the order
+     * is shuffled again.
+     * */
+    private int nextTrainingSample() {
+        if(trainingPosition == trainingOrder.length) {
+            //FISHER-YATES SHUFFLE
+            for (int i = trainingOrder.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int temp = trainingOrder[i];
+                trainingOrder[i] = trainingOrder[j];
+                trainingOrder[j] = temp;
+            }
+
+            trainingPosition = 0;
+        }
+
+        return trainingOrder[trainingPosition++];
+    }
+
+    /**
+     * Trains the network for the given number of epochs on a dataset that is streamed from disk
+     * instead of being held in memory. Every epoch reads the whole dataset once in the shuffled
+     * order of the dataset, while the next records are already being read in the background.
+     * */
+    public void train(Dataset dataset, int epochs) throws IOException {
+        if(dataset.getInputs() != layers[0].inputs)
+            throw new RuntimeException("The given dataset input length doesnt match with the number of input-neurons!");
+
+        if(dataset.getTargets() != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given dataset target length doesnt match with the number of output-neurons!");
+
+        startTraining();
+
+        if(streamInputs == null || streamInputs.length != batchSize || streamInputs[0].length != dataset.getInputs()) {
+            streamInputs = new double[batchSize][dataset.getInputs()];
+            streamTargets = new double[batchSize][dataset.getTargets()];
+        }
+
+        try {
+            for (int epoch = 0; epoch < epochs && !isStopped(); epoch++) {
+                dataset.startEpoch();
+
+                while (!isStopped()) {
+                    int samples = 0;
+
+                    while (samples < batchSize && dataset.next(streamInputs[samples], streamTargets[samples])) {
+                        batchInputs[samples] = streamInputs[samples];
+                        batchTargets[samples] = streamTargets[samples];
+                        samples++;
+                    }
+
+                    if(samples == 0)
+                        break;
+
+                    trainBatch(samples);
+                }
+            }
+        } finally {
+            //AN EPOCH THAT WAS STOPPED EARLY LEAVES THE READER BLOCKED ON THE FULL QUEUE
+            dataset.endEpoch();
+        }
+
+        completeTraining();
+    }
+
+    private void trainBatch(int samples) {
+        long allocationStart = trainingMetrics == null ? 0 : trainingMetrics.allocatedBytes();
+        int workers = Math.min(workerGradients.length, samples);
+
+        if(forkJoinPool == null || workers == 1) {
+            gradient.clear();
+            accumulateBatch(gradient, 0, samples);
+        } else {
+            forkJoinPool.invoke(new GradientTask(0, workers, workers, samples));
+        }
+
+        trainingEpochs += samples;
+
+        applyGradient(gradient, 1.0 / samples);
 
-        backPropagation(trainingDataInput[randomDataset], trainingDataTarget[randomDataset]);
+        if(trainingMetrics != null)
+            recordMetrics(samples, allocationStart, true);
+    }
+
+    private void accumulateBatch(Gradient gradient, int firstSample, int lastSample) {
+        for (int sample = firstSample; sample < lastSample; sample++)
+            accumulateGradient(batchInputs[sample], batchTargets[sample], gradient);
+    }
+
+    /**
+     * Computes the gradient of the workers [from, to) and reduces it into the buffer of worker from.
+     * The task is never serialized, it only inherits Serializable from ForkJoinTask.
+     * */
+    @SuppressWarnings("serial")
+    private class GradientTask extends RecursiveAction {
+        private final int from, to, workers, samples;
+
+        private GradientTask(int from, int to, int workers, int samples) {
+            this.from = from;
+            this.to = to;
+            this.workers = workers;
+            this.samples = samples;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1) {
+                Gradient workerGradient = workerGradients[from];
+                workerGradient.clear();
+
+                int firstSample = (int) ((long) samples * from / workers);
+                int lastSample = (int) ((long) samples * to / workers);
+
+                accumulateBatch(workerGradient, firstSample, lastSample);
+
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+
+            invokeAll(new GradientTask(from, middle, workers, samples), new GradientTask(middle, to, workers, samples));
+
+            workerGradients[from].add(workerGradients[middle]);
+        }
     }
 
     public void setTestData(double[][] input, double[][] targetOutput) {
         if(input.length != targetOutput.length)
             throw new RuntimeException("The given dataset length doesnt match with the dataset target values!");
 
-        trainingDataInput = input;
-        trainingDataTarget = targetOutput;
+        testDataInput = input;
+        testDataTarget = targetOutput;
     }
 
     private double accuracy(double[][] input, double[][] target) {
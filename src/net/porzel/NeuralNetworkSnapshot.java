@@ -0,0 +1,69 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+
+/**
+ * Immutable copy of the weights and biases of a NeuralNetwork. A snapshot is never changed after it
+ * has been published, so it can be used for inference by any number of threads without locking.
+ * */
+public final class NeuralNetworkSnapshot {
+    private final Layer[] layers;
+    private final ActivationFunction activationFunction;
+    private final ThreadLocal<Workspace> workspaces;
+    private final long version;
+
+    NeuralNetworkSnapshot(Layer[] layers, ActivationFunction activationFunction, ThreadLocal<Workspace> workspaces, long version) {
+        this.layers = Layer.copy(layers);
+        this.activationFunction = activationFunction;
+        this.workspaces = workspaces;
+        this.version = version;
+    }
+
+    Layer[] getLayers() {
+        return layers;
+    }
+
+    public double[] propagation(double[] input) {
+        return propagation(input, new double[layers[layers.length - 1].neurons]);
+    }
+
+    public double[] propagation(double[] input, double[] output) {
+        if(input.length != layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(output.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        double[] result = workspaces.get().propagation(layers, activationFunction, input);
+        System.arraycopy(result, 0, output, 0, output.length);
+
+        return output;
+    }
+
+    public double[] propagation(int[] indices, double[] values) {
+        return propagation(indices, values, new double[layers[layers.length - 1].neurons]);
+    }
+
+    public double[] propagation(int[] indices, double[] values, double[] output) {
+        return Layer.propagation(layers, activationFunction, workspaces.get(), indices, values, output);
+    }
+
+    public double[] batchPropagation(SparseBatch batch) {
+        return Layer.propagation(layers, activationFunction, workspaces.get(), batch);
+    }
+
+    public double[][] batchPropagation(double[][] input) {
+        return Layer.propagation(layers, activationFunction, input);
+    }
+
+    public double[] batchPropagation(double[] input, int rows) {
+        return Layer.propagation(layers, activationFunction, input, rows);
+    }
+
+    /**
+     * Number of weight updates the network had applied when this snapshot was taken.
+     * */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,307 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+import net.porzel.functions.WeightInitialization;
+import net.porzel.kernels.Kernels;
+import net.porzel.random.RandomSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.random.RandomGenerator;
+
+/**
+ * NeuralNetwork whose weights and biases are stored in direct buffers outside of the Java heap, so
+ * very large networks neither fill the old generation nor lengthen garbage collection pauses. The
+ * memory is released explicitly with close, after which the network cant be used anymore. Every
+ * layer is limited to 2 GB of weights. A network can be created, initialized and loaded straight into
+ * the direct buffers, so the heap never has to hold the whole model.
+ * <p>
+ * Training is plain stochastic gradient descent on one sample at a time with the learning rate. The
+ * optimizer, learning rate schedule, batch size and threads of NeuralNetwork are not supported, a
+ * network that needs them is trained on the heap and copied off-heap afterwards.
+ * <p>
+ * Every call holds a read lock while it accesses the buffers and close takes the write lock, so close
+ * waits for the calls that are in flight and the memory is never freed while it is being used.
+ * */
+public final class OffHeapNeuralNetwork implements AutoCloseable {
+    private static final int CHUNK = 1 << 16;
+
+    private final BufferLayer[] layers;
+    private double learningRate;
+    private ActivationFunction activationFunction;
+    private volatile boolean closed = false;
+    private final StampedLock lock = new StampedLock();
+
+    private final ThreadLocal<double[][]> outputs, errors;
+
+    /**
+     * Copies the weights, biases, activation function and learning rate of the given network off-heap.
+     * */
+    public OffHeapNeuralNetwork(NeuralNetwork neuralNetwork) {
+        this(copy(neuralNetwork.getLayers()), neuralNetwork.getActivationFunction(), neuralNetwork.getLearningRate());
+    }
+
+    /**
+     * Creates a network with the given layers whose weights and biases are initialized directly in
+     * the off-heap buffers.
+     * */
+    public OffHeapNeuralNetwork(int[] layers, WeightInitialization weightInitialization) {
+        this(layers, weightInitialization, RandomSource.create());
+    }
+
+    /**
+     * Creates a network whose weight initialization is derived from the seed. It starts with the same
+     * weights as a NeuralNetwork created with the same layers, seed and weight initialization.
+     * */
+    public OffHeapNeuralNetwork(int[] layers, WeightInitialization weightInitialization, long seed) {
+        this(layers, weightInitialization, RandomSource.create(seed));
+    }
+
+    private OffHeapNeuralNetwork(int[] layers, WeightInitialization weightInitialization, RandomGenerator random) {
+        this(allocate(layers), null, 0);
+
+        initialize(weightInitialization, random);
+    }
+
+    private OffHeapNeuralNetwork(BufferLayer[] layers, ActivationFunction activationFunction, double learningRate) {
+        this.layers = layers;
+        this.activationFunction = activationFunction;
+        this.learningRate = learningRate;
+
+        outputs = ThreadLocal.withInitial(() -> BufferLayer.allocateOutputs(this.layers));
+        errors = ThreadLocal.withInitial(() -> BufferLayer.allocateOutputs(this.layers));
+    }
+
+    /**
+     * Reads a model saved with NeuralNetwork.save straight into off-heap buffers. Models with a custom
+     * activation function need it to be set with setActivationFunction before they can be used.
+     * */
+    public static OffHeapNeuralNetwork load(Path path) throws IOException {
+        try (FileChannel channel = ModelFile.open(path)) {
+            ModelFile modelFile = ModelFile.read(channel);
+            BufferLayer[] layers = allocate(modelFile.neurons);
+
+            try {
+                for (int layer = 0; layer < layers.length; layer++) {
+                    modelFile.readWeights(channel, layer, layers[layer].weights);
+                    modelFile.readBiases(channel, layer, layers[layer].biases);
+                }
+            } catch (IOException | RuntimeException e) {
+                for (BufferLayer layer : layers)
+                    layer.release();
+
+                throw e;
+            }
+
+            ActivationFunction activationFunction = modelFile.activationFunction == ActivationFunction.CUSTOM ? null : ActivationFunction.byId(modelFile.activationFunction);
+
+            return new OffHeapNeuralNetwork(layers, activationFunction, modelFile.learningRate);
+        }
+    }
+
+    private static BufferLayer[] copy(Layer[] heapLayers) {
+        BufferLayer[] layers = new BufferLayer[heapLayers.length];
+
+        for (int layer = 0; layer < heapLayers.length; layer++)
+            layers[layer] = BufferLayer.allocate(heapLayers[layer]);
+
+        return layers;
+    }
+
+    private static BufferLayer[] allocate(int[] neurons) {
+        if(neurons.length < 3)
+            throw new RuntimeException("The network must have at least 3 layers!");
+
+        for (int size : neurons) {
+            if(size < 1)
+                throw new RuntimeException("There cant be less than one Neuron in one Layer!");
+        }
+
+        BufferLayer[] layers = new BufferLayer[neurons.length - 1];
+
+        for (int layer = 0; layer < layers.length; layer++)
+            layers[layer] = BufferLayer.allocate(neurons[layer], neurons[layer + 1]);
+
+        return layers;
+    }
+
+    /**
+     * Initializes the weights chunk by chunk, so at most one chunk of a layer is on the heap. The other
+     * layers are passed as empty arrays, which keeps the scale of the initialization and the order of
+     * the random numbers the same as on the heap. The biases are small and initialized as a whole.
+     * */
+    private void initialize(WeightInitialization weightInitialization, RandomGenerator random) {
+        double[][] field = new double[layers.length][], biases = new double[layers.length][];
+        int[] neurons = new int[layers.length];
+        double[] chunk = new double[CHUNK];
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            neurons[layer] = layers[layer].neurons;
+            biases[layer] = new double[layers[layer].neurons];
+        }
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            Arrays.fill(field, new double[0]);
+            int weights = layers[layer].inputs * layers[layer].neurons;
+
+            for (int offset = 0; offset < weights; offset += CHUNK) {
+                field[layer] = chunk.length <= weights - offset ? chunk : new double[weights - offset];
+                weightInitialization.function(field, neurons, random);
+
+                layers[layer].weights.asDoubleBuffer().put(offset, field[layer]);
+            }
+        }
+
+        weightInitialization.function(biases, random);
+
+        for (int layer = 0; layer < layers.length; layer++)
+            layers[layer].biases.asDoubleBuffer().put(0, biases[layer]);
+    }
+
+    public OffHeapNeuralNetwork setActivationFunction(ActivationFunction activationFunction) {
+        this.activationFunction = activationFunction;
+        return this;
+    }
+
+    public OffHeapNeuralNetwork setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+        return this;
+    }
+
+    /**
+     * Copies the network back onto the heap.
+     * */
+    public NeuralNetwork toNeuralNetwork() {
+        Layer[] heapLayers = new Layer[layers.length];
+        long stamp = readLock();
+
+        try {
+            for (int layer = 0; layer < layers.length; layer++)
+                heapLayers[layer] = layers[layer].toLayer();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        NeuralNetwork neuralNetwork = new NeuralNetwork(heapLayers).setLearningRate(learningRate);
+
+        if(activationFunction != null)
+            neuralNetwork.setActivationFunction(activationFunction);
+
+        return neuralNetwork;
+    }
+
+    public double[] propagation(double[] input) {
+        return propagation(input, new double[layers[layers.length - 1].neurons]);
+    }
+
+    public double[] propagation(double[] input, double[] output) {
+        if(input.length != layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(output.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        long stamp = readLock();
+
+        try {
+            double[] result = BufferLayer.propagation(layers, activationFunction, outputs.get(), input);
+            System.arraycopy(result, 0, output, 0, output.length);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        return output;
+    }
+
+    public void backPropagation(double[] input, double[] targetOutput) {
+        if(input.length != layers[0].inputs)
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(targetOutput.length != layers[layers.length - 1].neurons)
+            throw new RuntimeException("The given target output length doesnt match with the number of output-neurons!");
+
+        long stamp = readLock();
+
+        try {
+            update(input, targetOutput);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void update(double[] input, double[] targetOutput) {
+        Kernels kernels = Kernels.get();
+        double[][] layerOutputs = outputs.get();
+        double[][] neuronError = errors.get();
+
+        //PROPAGATION
+        BufferLayer.propagation(layers, activationFunction, layerOutputs, input);
+
+        //ERROR CALCULATING OUTPUT LAYER
+        int outputLayer = layers.length - 1;
+
+        for (int neuron = 0; neuron < layers[outputLayer].neurons; neuron++)
+            neuronError[outputLayer][neuron] = targetOutput[neuron] - layerOutputs[outputLayer][neuron];
+
+        //ERROR CALCULATING HIDDEN LAYER
+        for (int layer = outputLayer - 1; layer >= 0; layer--) {
+            BufferLayer next = layers[layer + 1];
+
+            Arrays.fill(neuronError[layer], 0);
+
+            for (int neuronNextLayer = 0, offset = 0; neuronNextLayer < next.neurons; neuronNextLayer++, offset += next.inputs)
+                kernels.axpy(neuronError[layer + 1][neuronNextLayer], next.weights, offset, neuronError[layer], 0, layers[layer].neurons);
+        }
+
+        //UPDATE WEIGHTS
+        for (int layer = 0; layer <= outputLayer; layer++) {
+            BufferLayer current = layers[layer];
+            double[] layerInput = layer == 0 ? input : layerOutputs[layer - 1];
+
+            for (int neuron = 0, offset = 0; neuron < current.neurons; neuron++, offset += current.inputs) {
+                double delta = learningRate * neuronError[layer][neuron] * activationFunction.derivative(layerOutputs[layer][neuron]);
+
+                kernels.axpy(delta, layerInput, 0, current.weights, offset, current.inputs);
+                current.addBias(neuron, delta);
+            }
+        }
+    }
+
+    /**
+     * Waits for the calls in flight and releases the off-heap memory of all layers.
+     * */
+    @Override
+    public synchronized void close() {
+        if(closed)
+            return;
+
+        //NEW CALLS FAIL FROM NOW ON, SO THE WRITE LOCK IS NOT STARVED BY OVERLAPPING READERS
+        closed = true;
+
+        long stamp = lock.writeLock();
+
+        try {
+            for (BufferLayer layer : layers)
+                layer.release();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes a read lock that keeps the buffers from being released, it fails if the network is closed.
+     * */
+    private long readLock() {
+        long stamp = lock.readLock();
+
+        if(closed) {
+            lock.unlockRead(stamp);
+            throw new RuntimeException("The network has been closed!");
+        }
+
+        return stamp;
+    }
+}
@@ -0,0 +1,264 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+import net.porzel.kernels.Kernels;
+
+import java.util.Arrays;
+
+/**
+ * Post-training int8 quantization of a network for inference, created with NeuralNetwork.quantize.
+ * Every row of weights (the weights of one neuron) is quantized symmetrically to int8 with its own
+ * float scale, which needs an eighth of the memory of the double weights. The input of every layer
+ * is quantized the same way with one scale per layer, which is calibrated on sample inputs as the
+ * largest absolute value the layer sees. The dot products are computed on the int8 values with int
+ * accumulation and scaled back afterwards, biases and activation functions stay in double precision.
+ * Layers with short rows and enough neurons store their weights transposed and accumulate all neurons
+ * at once, so they dont pay a horizontal sum per neuron.
+ * <p>
+ * Quantizing checks the engine against propagation of the original network on the calibration
+ * inputs, the largest and the mean absolute output error are available through getMaxError and
+ * getMeanError. Inputs outside of the calibrated range are clamped.
+ * */
+public final class QuantizedNeuralNetwork {
+    private static final int MAX = 127;
+    private static final int MIN_ROW_INPUTS = 128, MIN_COLUMN_NEURONS = 16;
+    //THE INT ACCUMULATION OF THE BYTE DOT PRODUCT IS SAFE BELOW 131072 PRODUCTS
+    private static final int DOT_BLOCK = 1 << 16;
+
+    private final int[] inputs, neurons;
+    private final boolean[] columns;
+    private final byte[][] weights;
+    private final float[][] weightScales;
+    private final float[] inputScales, inverseInputScales;
+    private final double[][] biases;
+    private final ActivationFunction activationFunction;
+    private final ThreadLocal<Buffers> buffers;
+
+    private double maxError, meanError;
+
+    QuantizedNeuralNetwork(NeuralNetwork neuralNetwork, double[][] calibration) {
+        Layer[] layers = neuralNetwork.getLayers();
+
+        if(neuralNetwork.getActivationFunction() == null)
+            throw new RuntimeException("The network needs an activation function to be quantized!");
+
+        if(calibration.length == 0)
+            throw new RuntimeException("The network cant be quantized without calibration inputs!");
+
+        activationFunction = neuralNetwork.getActivationFunction();
+        inputs = new int[layers.length];
+        neurons = new int[layers.length];
+        columns = new boolean[layers.length];
+        weights = new byte[layers.length][];
+        weightScales = new float[layers.length][];
+        inputScales = new float[layers.length];
+        inverseInputScales = new float[layers.length];
+        biases = new double[layers.length][];
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            inputs[layer] = layers[layer].inputs;
+            neurons[layer] = layers[layer].neurons;
+            biases[layer] = layers[layer].biases.clone();
+
+            columns[layer] = inputs[layer] < MIN_ROW_INPUTS && neurons[layer] >= MIN_COLUMN_NEURONS;
+
+            quantizeWeights(layer, layers[layer]);
+        }
+
+        calibrate(layers, calibration);
+
+        buffers = ThreadLocal.withInitial(() -> new Buffers(inputs, neurons));
+
+        check(neuralNetwork, calibration);
+    }
+
+    private void quantizeWeights(int layer, Layer source) {
+        weights[layer] = new byte[source.weights.length];
+        weightScales[layer] = new float[source.neurons];
+
+        for (int neuron = 0, offset = 0; neuron < source.neurons; neuron++, offset += source.inputs) {
+            double maximum = 0;
+
+            for (int input = 0; input < source.inputs; input++)
+                maximum = Math.max(maximum, Math.abs(source.weights[offset + input]));
+
+            float scale = maximum == 0 ? 1 : (float) (maximum / MAX);
+            weightScales[layer][neuron] = scale;
+
+            for (int input = 0; input < source.inputs; input++) {
+                int index = columns[layer] ? input * source.neurons + neuron : offset + input;
+
+                weights[layer][index] = quantize(source.weights[offset + input], 1 / scale);
+            }
+        }
+    }
+
+    /**
+     * Runs the calibration inputs through the double precision layers and sets the input scale of every
+     * layer from the largest absolute value it receives.
+     * */
+    private void calibrate(Layer[] layers, double[][] calibration) {
+        double[] maximum = new double[layers.length];
+        Workspace workspace = new Workspace(layers);
+
+        for (double[] sample : calibration) {
+            if(sample.length != inputs[0])
+                throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+            workspace.propagation(layers, activationFunction, sample);
+
+            for (int layer = 0; layer < layers.length; layer++) {
+                double[] layerInput = layer == 0 ? sample : workspace.outputs[layer - 1];
+
+                for (double value : layerInput)
+                    maximum[layer] = Math.max(maximum[layer], Math.abs(value));
+            }
+        }
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            inputScales[layer] = maximum[layer] == 0 ? 1 : (float) (maximum[layer] / MAX);
+            inverseInputScales[layer] = 1 / inputScales[layer];
+        }
+    }
+
+    private void check(NeuralNetwork neuralNetwork, double[][] calibration) {
+        double[] expected = new double[getOutputs()], actual = new double[getOutputs()];
+        double sum = 0;
+
+        for (double[] sample : calibration) {
+            neuralNetwork.propagation(sample, expected);
+            propagation(sample, actual);
+
+            for (int neuron = 0; neuron < actual.length; neuron++) {
+                double error = Math.abs(expected[neuron] - actual[neuron]);
+
+                maxError = Math.max(maxError, error);
+                sum += error;
+            }
+        }
+
+        meanError = sum / ((double) calibration.length * actual.length);
+    }
+
+    private static byte quantize(double value, float inverseScale) {
+        return (byte) Math.max(-MAX, Math.min(MAX, (int) Math.rint(value * inverseScale)));
+    }
+
+    public int getInputs() {
+        return inputs[0];
+    }
+
+    public int getOutputs() {
+        return neurons[neurons.length - 1];
+    }
+
+    /**
+     * Largest absolute difference to the outputs of the original network on the calibration inputs.
+     * */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * Mean absolute difference to the outputs of the original network on the calibration inputs.
+     * */
+    public double getMeanError() {
+        return meanError;
+    }
+
+    /**
+     * Bytes used by the quantized weights and their scales.
+     * */
+    public long getWeightBytes() {
+        long bytes = 0;
+
+        for (int layer = 0; layer < weights.length; layer++)
+            bytes += weights[layer].length + (long) weightScales[layer].length * Float.BYTES;
+
+        return bytes;
+    }
+
+    public double[] propagation(double[] input) {
+        return propagation(input, new double[getOutputs()]);
+    }
+
+    public double[] propagation(double[] input, double[] output) {
+        if(input.length != inputs[0])
+            throw new RuntimeException("The given input length doesnt match with the number of input-neurons!");
+
+        if(output.length != getOutputs())
+            throw new RuntimeException("The given output length doesnt match with the number of output-neurons!");
+
+        Kernels kernels = Kernels.get();
+        Buffers current = buffers.get();
+        int last = neurons.length - 1;
+
+        for (int layer = 0; layer <= last; layer++) {
+            double[] layerOutput = layer == last ? output : current.outputs[layer];
+            byte[] quantized = current.inputs[layer];
+            byte[] w = weights[layer];
+            float inputScale = inputScales[layer], inverseInputScale = inverseInputScales[layer];
+            int m = inputs[layer];
+
+            for (int i = 0; i < m; i++)
+                quantized[i] = quantize(input[i], inverseInputScale);
+
+            if(columns[layer]) {
+                int[] sums = current.sums[layer];
+                int n = neurons[layer];
+
+                Arrays.fill(sums, 0);
+
+                for (int i = 0, offset = 0; i < m; i++, offset += n)
+                    kernels.axpy(quantized[i], w, offset, sums, 0, n);
+
+                for (int neuron = 0; neuron < n; neuron++)
+                    layerOutput[neuron] = sums[neuron] * (double) (weightScales[layer][neuron] * inputScale) + biases[layer][neuron];
+            } else {
+                for (int neuron = 0, offset = 0; neuron < neurons[layer]; neuron++, offset += m)
+                    layerOutput[neuron] = dot(kernels, w, offset, quantized, m) * (double) (weightScales[layer][neuron] * inputScale) + biases[layer][neuron];
+            }
+
+            activationFunction.function(layerOutput);
+            input = layerOutput;
+        }
+
+        return output;
+    }
+
+    /**
+     * Byte dot product of arbitrary length, rows longer than DOT_BLOCK are summed in blocks into a long.
+     * */
+    private static long dot(Kernels kernels, byte[] a, int aOffset, byte[] b, int length) {
+        if(length <= DOT_BLOCK)
+            return kernels.dot(a, aOffset, b, 0, length);
+
+        long sum = 0;
+
+        for (int start = 0; start < length; start += DOT_BLOCK)
+            sum += kernels.dot(a, aOffset + start, b, start, Math.min(DOT_BLOCK, length - start));
+
+        return sum;
+    }
+
+    /**
+     * Quantized inputs, int sums and double outputs of every layer for one thread.
+     * */
+    private static final class Buffers {
+        final byte[][] inputs;
+        final int[][] sums;
+        final double[][] outputs;
+
+        Buffers(int[] inputs, int[] neurons) {
+            this.inputs = new byte[inputs.length][];
+            this.sums = new int[neurons.length][];
+            this.outputs = new double[neurons.length][];
+
+            for (int layer = 0; layer < inputs.length; layer++) {
+                this.inputs[layer] = new byte[inputs[layer]];
+                this.sums[layer] = new int[neurons[layer]];
+                this.outputs[layer] = new double[neurons[layer]];
+            }
+        }
+    }
+}
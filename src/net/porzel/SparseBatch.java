@@ -0,0 +1,61 @@
+package net.porzel;
+
+/**
+ * Batch of sparse inputs in compressed sparse row (CSR) format. The non-zero values of row r are
+ * values[offsets[r] .. offsets[r + 1]) at the input indices indices[offsets[r] .. offsets[r + 1]).
+ * The arrays are used as they are, so they must not be changed while the batch is in use.
+ * */
+public final class SparseBatch {
+    final int rows;
+    final int[] offsets, indices;
+    final double[] values;
+
+    public SparseBatch(int[] offsets, int[] indices, double[] values) {
+        if(offsets.length < 1 || offsets[0] != 0)
+            throw new RuntimeException("The row offsets must start with 0!");
+
+        if(indices.length != values.length || offsets[offsets.length - 1] != indices.length)
+            throw new RuntimeException("The row offsets dont match with the number of indices and values!");
+
+        for (int row = 1; row < offsets.length; row++) {
+            if(offsets[row] < offsets[row - 1])
+                throw new RuntimeException("The row offsets must not decrease!");
+        }
+
+        this.rows = offsets.length - 1;
+        this.offsets = offsets;
+        this.indices = indices;
+        this.values = values;
+    }
+
+    /**
+     * Builds a batch from the index and value arrays of every row.
+     * */
+    public static SparseBatch of(int[][] indices, double[][] values) {
+        if(indices.length != values.length)
+            throw new RuntimeException("The number of index rows doesnt match with the number of value rows!");
+
+        int[] offsets = new int[indices.length + 1];
+
+        for (int row = 0; row < indices.length; row++) {
+            if(indices[row].length != values[row].length)
+                throw new RuntimeException("The number of indices doesnt match with the number of values!");
+
+            offsets[row + 1] = offsets[row] + indices[row].length;
+        }
+
+        int[] flatIndices = new int[offsets[indices.length]];
+        double[] flatValues = new double[offsets[indices.length]];
+
+        for (int row = 0; row < indices.length; row++) {
+            System.arraycopy(indices[row], 0, flatIndices, offsets[row], indices[row].length);
+            System.arraycopy(values[row], 0, flatValues, offsets[row], values[row].length);
+        }
+
+        return new SparseBatch(offsets, flatIndices, flatValues);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,36 @@
+package net.porzel;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event that is committed for every trained batch while it is enabled in the recording.
+ * */
+@Name("net.porzel.TrainingBatch")
+@Label("Training Batch")
+@Category("Neural Network")
+@Description("One batch trained by a NeuralNetwork")
+final class TrainingBatchEvent extends Event {
+    @Label("Samples")
+    int samples;
+
+    @Label("Batch Loss")
+    double batchLoss;
+
+    @Label("Loss")
+    double loss;
+
+    @Label("Gradient Norm")
+    double gradientNorm;
+
+    @Label("Samples Per Second")
+    double samplesPerSecond;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
@@ -0,0 +1,13 @@
+package net.porzel;
+
+/**
+ * Receives the metrics of a network while it is being trained. The methods are called on the
+ * training thread, so they should return quickly.
+ * */
+public interface TrainingListener {
+
+    void batchCompleted(TrainingMetrics metrics);
+
+    default void trainingCompleted(TrainingMetrics metrics) {
+    }
+}
@@ -0,0 +1,209 @@
+package net.porzel;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Counters of a training run that are updated once per batch by the training thread: processed
+ * samples, throughput, the mean squared error as running and last batch loss, the norm of the
+ * averaged gradient, the bytes the training thread allocated per batch and the time spent in the
+ * forward and backward pass of every layer. The metrics can be exported over JMX with registerMBean
+ * and every batch is emitted as a net.porzel.TrainingBatch Flight Recorder event when enabled.
+ * <p>
+ * Attach the metrics with NeuralNetwork.setTrainingMetrics. Without metrics, the network skips
+ * the timing and gradient norm computations completely. The gradient norm needs an extra pass over
+ * all gradients, so it is only computed every gradientNormInterval batches.
+ * */
+public final class TrainingMetrics implements TrainingMetricsMXBean {
+    private static final double LOSS_SMOOTHING = 0.01;
+    private static final long RATE_INTERVAL = 1_000_000_000L;
+
+    private final List<TrainingListener> listeners = new CopyOnWriteArrayList<>();
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    private volatile long samples = 0, batches = 0, allocatedBytes = 0;
+    private volatile double loss = Double.NaN, batchLoss = Double.NaN, gradientNorm = 0, samplesPerSecond = 0;
+    private int gradientNormInterval = 16;
+    private long[] forwardNanos = new long[0], backwardNanos = new long[0];
+
+    private long rateTime = System.nanoTime(), rateSamples = 0;
+
+    public TrainingMetrics() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported())
+            threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        else
+            threadMXBean = null;
+    }
+
+    public TrainingMetrics addListener(TrainingListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public TrainingMetrics removeListener(TrainingListener listener) {
+        listeners.remove(listener);
+        return this;
+    }
+
+    /**
+     * Number of batches between two computations of the gradient norm, 1 computes it for every batch.
+     * */
+    public TrainingMetrics setGradientNormInterval(int gradientNormInterval) {
+        if(gradientNormInterval < 1)
+            throw new RuntimeException("The gradient norm interval must be at least 1!");
+
+        this.gradientNormInterval = gradientNormInterval;
+        return this;
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server as net.porzel:type=TrainingMetrics,name=[name].
+     * */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("net.porzel:type=TrainingMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("The training metrics could not be registered!", e);
+        }
+    }
+
+    @Override
+    public long getSamples() {
+        return samples;
+    }
+
+    @Override
+    public long getBatches() {
+        return batches;
+    }
+
+    @Override
+    public double getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    /**
+     * Exponential moving average of the batch loss.
+     * */
+    @Override
+    public double getLoss() {
+        return loss;
+    }
+
+    /**
+     * Mean squared error of the outputs of the last batch, measured before its weight update.
+     * */
+    @Override
+    public double getBatchLoss() {
+        return batchLoss;
+    }
+
+    /**
+     * L2 norm of the averaged gradient of the last batch for which it was computed.
+     * */
+    @Override
+    public double getGradientNorm() {
+        return gradientNorm;
+    }
+
+    /**
+     * Bytes the training thread allocated during the last batch, -1 if the JVM cant measure it.
+     * */
+    @Override
+    public long getAllocatedBytesPerBatch() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Total nanoseconds spent in the forward pass of every layer, summed over all worker threads.
+     * */
+    @Override
+    public synchronized long[] getForwardNanos() {
+        return forwardNanos.clone();
+    }
+
+    /**
+     * Total nanoseconds spent in the backward pass of every layer, summed over all worker threads.
+     * */
+    @Override
+    public synchronized long[] getBackwardNanos() {
+        return backwardNanos.clone();
+    }
+
+    long allocatedBytes() {
+        return threadMXBean == null ? -1 : threadMXBean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Whether the gradient norm of the next batch is computed.
+     * */
+    boolean isGradientNormDue() {
+        return batches % gradientNormInterval == 0;
+    }
+
+    /**
+     * Records a trained batch, batchGradientNorm is NaN for batches without a computed gradient norm.
+     * */
+    void record(int batchSamples, int outputs, double squaredError, double batchGradientNorm, long[] batchForwardNanos, long[] batchBackwardNanos, long allocationStart) {
+        //THE JMX THREAD READS THE PER-LAYER TIMES, SO THEY ARE ONLY CHANGED UNDER THE LOCK
+        synchronized (this) {
+            if(forwardNanos.length != batchForwardNanos.length) {
+                forwardNanos = new long[batchForwardNanos.length];
+                backwardNanos = new long[batchBackwardNanos.length];
+            }
+
+            for (int layer = 0; layer < forwardNanos.length; layer++) {
+                forwardNanos[layer] += batchForwardNanos[layer];
+                backwardNanos[layer] += batchBackwardNanos[layer];
+            }
+        }
+
+        double currentLoss = squaredError / ((double) batchSamples * outputs);
+
+        batchLoss = currentLoss;
+        loss = Double.isNaN(loss) ? currentLoss : loss + LOSS_SMOOTHING * (currentLoss - loss);
+
+        if(!Double.isNaN(batchGradientNorm))
+            gradientNorm = batchGradientNorm;
+
+        allocatedBytes = allocationStart < 0 ? -1 : allocatedBytes() - allocationStart;
+        samples += batchSamples;
+        batches++;
+
+        long now = System.nanoTime();
+
+        if(now - rateTime >= RATE_INTERVAL) {
+            samplesPerSecond = (samples - rateSamples) * 1e9 / (now - rateTime);
+            rateTime = now;
+            rateSamples = samples;
+        }
+
+        TrainingBatchEvent event = new TrainingBatchEvent();
+
+        if(event.shouldCommit()) {
+            event.samples = batchSamples;
+            event.batchLoss = batchLoss;
+            event.loss = loss;
+            event.gradientNorm = gradientNorm;
+            event.samplesPerSecond = samplesPerSecond;
+            event.allocatedBytes = allocatedBytes;
+            event.commit();
+        }
+
+        for (TrainingListener listener : listeners)
+            listener.batchCompleted(this);
+    }
+
+    void completed() {
+        for (TrainingListener listener : listeners)
+            listener.trainingCompleted(this);
+    }
+}
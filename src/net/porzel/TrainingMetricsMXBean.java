@@ -0,0 +1,25 @@
+package net.porzel;
+
+/**
+ * Management interface under which TrainingMetrics are exported over JMX.
+ * */
+public interface TrainingMetricsMXBean {
+
+    long getSamples();
+
+    long getBatches();
+
+    double getSamplesPerSecond();
+
+    double getLoss();
+
+    double getBatchLoss();
+
+    double getGradientNorm();
+
+    long getAllocatedBytesPerBatch();
+
+    long[] getForwardNanos();
+
+    long[] getBackwardNanos();
+}
@@ -0,0 +1,88 @@
+package net.porzel;
+
+import net.porzel.functions.ActivationFunction;
+
+/**
+ * Preallocated activations, errors and deltas of every layer. A workspace belongs to exactly one thread,
+ * so the forward and backward passes can reuse it for every sample without allocating.
+ * */
+final class Workspace {
+    final double[][] outputs;
+    final double[][] errors;
+    final double[][] deltas;
+
+    Workspace(Layer[] layers) {
+        outputs = new double[layers.length][];
+        errors = new double[layers.length][];
+        deltas = new double[layers.length][];
+
+        for (int layer = 0; layer < layers.length; layer++) {
+            outputs[layer] = new double[layers[layer].neurons];
+            errors[layer] = new double[layers[layer].neurons];
+            deltas[layer] = new double[layers[layer].neurons];
+        }
+    }
+
+    /**
+     * Propagates the input through all layers, keeping the activations of every layer in outputs.
+     * Returns the activations of the output layer.
+     * */
+    double[] propagation(Layer[] layers, ActivationFunction activationFunction, double[] input) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            layers[layer].propagation(input, outputs[layer]);
+            activationFunction.function(outputs[layer]);
+
+            input = outputs[layer];
+        }
+
+        return input;
+    }
+
+    /**
+     * Same as propagation, additionally adding the nanoseconds spent in every layer to nanos.
+     * */
+    double[] propagation(Layer[] layers, ActivationFunction activationFunction, double[] input, long[] nanos) {
+        for (int layer = 0; layer < layers.length; layer++) {
+            long start = System.nanoTime();
+
+            layers[layer].propagation(input, outputs[layer]);
+            activationFunction.function(outputs[layer]);
+
+            nanos[layer] += System.nanoTime() - start;
+            input = outputs[layer];
+        }
+
+        return input;
+    }
+
+    /**
+     * Propagates a sparse input, given as values[i] at indices[i] for i in [from, to), through all
+     * layers. Only the first layer sees the sparse input, so only it has a sparse kernel. The
+     * nanoseconds spent in every layer are added to nanos unless it is null.
+     * */
+    double[] propagation(Layer[] layers, ActivationFunction activationFunction, int[] indices, double[] values, int from, int to, long[] nanos) {
+        long start = nanos == null ? 0 : System.nanoTime();
+
+        layers[0].propagation(indices, values, from, to, outputs[0]);
+        activationFunction.function(outputs[0]);
+
+        if(nanos != null)
+            nanos[0] += System.nanoTime() - start;
+
+        double[] input = outputs[0];
+
+        for (int layer = 1; layer < layers.length; layer++) {
+            start = nanos == null ? 0 : System.nanoTime();
+
+            layers[layer].propagation(input, outputs[layer]);
+            activationFunction.function(outputs[layer]);
+
+            if(nanos != null)
+                nanos[layer] += System.nanoTime() - start;
+
+            input = outputs[layer];
+        }
+
+        return input;
+    }
+}
@@ -0,0 +1,62 @@
+package net.porzel.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class BinaryDataset extends Dataset {
+    private final FileChannel channel;
+    private final long recordBytes;
+    private ByteBuffer buffer;
+
+    BinaryDataset(Path path, int inputs, int targets) throws IOException {
+        super(inputs, targets);
+
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        recordBytes = ((long) inputs + targets) * Double.BYTES;
+
+        if(channel.size() % recordBytes != 0)
+            throw new RuntimeException("The dataset size is not a multiple of the record size!");
+    }
+
+    @Override
+    protected void rewind() throws IOException {
+        channel.position(0);
+    }
+
+    @Override
+    protected int read(double[] input, double[] target, int records) throws IOException {
+        long bytes = records * recordBytes;
+
+        if(bytes > Integer.MAX_VALUE)
+            throw new RuntimeException("A chunk of the dataset cant be larger than 2 GB!");
+
+        if(buffer == null || buffer.capacity() != bytes)
+            buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.clear();
+
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+
+        buffer.flip();
+
+        int count = (int) (buffer.remaining() / recordBytes);
+        DoubleBuffer values = buffer.asDoubleBuffer();
+
+        for (int record = 0; record < count; record++) {
+            values.get(input, record * getInputs(), getInputs());
+            values.get(target, record * getTargets(), getTargets());
+        }
+
+        return count;
+    }
+
+    @Override
+    protected void closeSource() throws IOException {
+        channel.close();
+    }
+}
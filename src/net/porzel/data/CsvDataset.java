@@ -0,0 +1,81 @@
+package net.porzel.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class CsvDataset extends Dataset {
+    private final Path path;
+    private BufferedReader reader;
+    private long lineNumber;
+
+    CsvDataset(Path path, int inputs, int targets) {
+        super(inputs, targets);
+
+        this.path = path;
+    }
+
+    @Override
+    protected void rewind() throws IOException {
+        closeSource();
+        reader = Files.newBufferedReader(path);
+        lineNumber = 0;
+    }
+
+    @Override
+    protected int read(double[] input, double[] target, int records) throws IOException {
+        int count = 0;
+        String line;
+
+        while (count < records && (line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if(line.isBlank())
+                continue;
+
+            int start = 0;
+
+            for (int value = 0; value < getInputs() + getTargets(); value++) {
+                int end = line.indexOf(',', start);
+
+                if(end < 0)
+                    end = line.length();
+
+                if(start > line.length())
+                    throw new IOException("The line " + lineNumber + " \"" + line + "\" has less than " + (getInputs() + getTargets()) + " values!");
+
+                String text = line.substring(start, end).trim();
+                double parsed;
+
+                try {
+                    parsed = Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    throw new IOException("The value \"" + text + "\" in line " + lineNumber + " is not a number!", e);
+                }
+
+                if(value < getInputs())
+                    input[count * getInputs() + value] = parsed;
+                else
+                    target[count * getTargets() + value - getInputs()] = parsed;
+
+                start = end + 1;
+            }
+
+            if(start <= line.length())
+                throw new IOException("The line " + lineNumber + " \"" + line + "\" has more than " + (getInputs() + getTargets()) + " values!");
+
+            count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    protected void closeSource() throws IOException {
+        if(reader != null)
+            reader.close();
+
+        reader = null;
+    }
+}
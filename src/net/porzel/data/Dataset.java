@@ -0,0 +1,303 @@
+package net.porzel.data;
+
+import net.porzel.random.RandomSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.random.RandomGenerator;
+
+/**
+ * Training data that is read from disk in chunks instead of being held in memory. While the network
+ * trains on the current records, a background thread already reads the next chunks. Records are
+ * shuffled within a shuffle buffer of a configurable number of records, so the order of every epoch
+ * is random without the whole dataset being loaded.
+ * */
+public abstract class Dataset implements AutoCloseable {
+    private static final Chunk END = new Chunk(0, 0, 0);
+
+    private final int inputs, targets;
+    private int chunkRecords = 4096, shuffleRecords = 1 << 16, prefetchChunks = 4;
+    private RandomGenerator random = RandomSource.create();
+
+    private BlockingQueue<Chunk> free, filled;
+    private Chunk[] window;
+    private int windowChunks;
+    private int[] order;
+    private int orderLength, orderPosition;
+    private boolean ended;
+
+    private Thread reader;
+    private volatile IOException readerException;
+
+    protected Dataset(int inputs, int targets) {
+        if(inputs < 1 || targets < 1)
+            throw new RuntimeException("A record needs at least one input and one target value!");
+
+        this.inputs = inputs;
+        this.targets = targets;
+    }
+
+    /**
+     * Records stored as little-endian doubles, every record holding its inputs followed by its targets.
+     * */
+    public static Dataset binary(Path path, int inputs, int targets) throws IOException {
+        return new BinaryDataset(path, inputs, targets);
+    }
+
+    /**
+     * Records stored as comma separated lines, every line holding its inputs followed by its targets.
+     * */
+    public static Dataset csv(Path path, int inputs, int targets) {
+        return new CsvDataset(path, inputs, targets);
+    }
+
+    public int getInputs() {
+        return inputs;
+    }
+
+    public int getTargets() {
+        return targets;
+    }
+
+    /**
+     * Number of records the background thread reads at once.
+     * */
+    public Dataset setChunkSize(int records) {
+        if(records < 1)
+            throw new RuntimeException("A chunk must hold at least one record!");
+
+        this.chunkRecords = records;
+        this.free = null;
+        return this;
+    }
+
+    /**
+     * Number of records that are shuffled together. It is rounded up to whole chunks.
+     * */
+    public Dataset setShuffleBuffer(int records) {
+        if(records < 1)
+            throw new RuntimeException("The shuffle buffer must hold at least one record!");
+
+        this.shuffleRecords = records;
+        this.free = null;
+        return this;
+    }
+
+    /**
+     * Seeds the shuffling, so every run visits the records in the same order.
+     * */
+    public Dataset setSeed(long seed) {
+        this.random = RandomSource.create(seed);
+        return this;
+    }
+
+    /**
+     * Number of chunks the background thread may read ahead of the training.
+     * */
+    public Dataset setPrefetch(int chunks) {
+        if(chunks < 1)
+            throw new RuntimeException("At least one chunk must be read ahead!");
+
+        this.prefetchChunks = chunks;
+        this.free = null;
+        return this;
+    }
+
+    /**
+     * Positions the dataset before its first record.
+     * */
+    protected abstract void rewind() throws IOException;
+
+    /**
+     * Reads up to records records into the row-major input and target arrays and returns the number
+     * of records read, 0 once the end of the dataset is reached.
+     * */
+    protected abstract int read(double[] input, double[] target, int records) throws IOException;
+
+    /**
+     * Closes the underlying file.
+     * */
+    protected abstract void closeSource() throws IOException;
+
+    /**
+     * Starts a new pass over all records and the background thread that reads them.
+     * */
+    public void startEpoch() throws IOException {
+        stopReader();
+
+        int shuffleChunks = (int) (((long) shuffleRecords + chunkRecords - 1) / chunkRecords);
+
+        if((long) shuffleChunks * chunkRecords > Integer.MAX_VALUE)
+            throw new RuntimeException("The shuffle buffer cant hold more than " + Integer.MAX_VALUE + " records!");
+
+        if(free == null) {
+            free = new ArrayBlockingQueue<>(shuffleChunks + prefetchChunks);
+            filled = new ArrayBlockingQueue<>(shuffleChunks + prefetchChunks + 1);
+
+            for (int chunk = 0; chunk < shuffleChunks + prefetchChunks; chunk++)
+                free.add(new Chunk(chunkRecords, inputs, targets));
+
+            window = new Chunk[shuffleChunks];
+            order = new int[shuffleChunks * chunkRecords];
+        } else {
+            releaseWindow();
+
+            Chunk chunk;
+
+            while ((chunk = filled.poll()) != null) {
+                if(chunk != END)
+                    free.add(chunk);
+            }
+        }
+
+        windowChunks = 0;
+        orderLength = 0;
+        orderPosition = 0;
+        ended = false;
+        readerException = null;
+
+        rewind();
+
+        reader = new Thread(this::readChunks, "Dataset reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readChunks() {
+        try {
+            while (true) {
+                Chunk chunk = free.take();
+                chunk.count = read(chunk.input, chunk.target, chunkRecords);
+
+                if(chunk.count == 0) {
+                    free.add(chunk);
+                    break;
+                }
+
+                filled.put(chunk);
+            }
+        } catch (IOException e) {
+            readerException = e;
+        } catch (RuntimeException | Error e) {
+            //THE TRAINER WAITS FOR END, SO EVERY FAILURE MUST STILL POST IT
+            readerException = new IOException("Reading the dataset failed!", e);
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        filled.add(END);
+    }
+
+    /**
+     * Stops the background thread of the current epoch. The training calls this when it stops before
+     * the end of the epoch, so the thread doesnt stay blocked on the full queue of read chunks.
+     * */
+    public void endEpoch() {
+        stopReader();
+    }
+
+    /**
+     * Copies the next record of the current epoch into input and target. Returns false once every
+     * record of the epoch has been returned.
+     * */
+    public boolean next(double[] input, double[] target) throws IOException {
+        if(reader == null)
+            throw new RuntimeException("The epoch has not been started!");
+
+        if(orderPosition == orderLength && !fillWindow())
+            return false;
+
+        int record = order[orderPosition++];
+        Chunk chunk = window[record / chunkRecords];
+        int index = record % chunkRecords;
+
+        System.arraycopy(chunk.input, index * inputs, input, 0, inputs);
+        System.arraycopy(chunk.target, index * targets, target, 0, targets);
+
+        return true;
+    }
+
+    private boolean fillWindow() throws IOException {
+        releaseWindow();
+
+        try {
+            while (!ended && windowChunks < window.length) {
+                Chunk chunk = filled.take();
+
+                if(chunk == END)
+                    ended = true;
+                else
+                    window[windowChunks++] = chunk;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the dataset reader!", e);
+        }
+
+        if(readerException != null)
+            throw readerException;
+
+        orderLength = 0;
+        orderPosition = 0;
+
+        for (int chunk = 0; chunk < windowChunks; chunk++) {
+            for (int record = 0; record < window[chunk].count; record++)
+                order[orderLength++] = chunk * chunkRecords + record;
+        }
+
+        //FISHER-YATES SHUFFLE
+        for (int i = orderLength - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        return orderLength > 0;
+    }
+
+    private void releaseWindow() {
+        for (int chunk = 0; chunk < windowChunks; chunk++) {
+            free.add(window[chunk]);
+            window[chunk] = null;
+        }
+
+        windowChunks = 0;
+    }
+
+    private void stopReader() {
+        if(reader == null)
+            return;
+
+        reader.interrupt();
+
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        reader = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stopReader();
+        closeSource();
+    }
+
+    private static final class Chunk {
+        private final double[] input, target;
+        private int count;
+
+        private Chunk(int records, int inputs, int targets) {
+            if((long) records * ((long) inputs + targets) > Integer.MAX_VALUE)
+                throw new RuntimeException("A chunk cant hold more than " + Integer.MAX_VALUE + " values!");
+
+            input = new double[records * inputs];
+            target = new double[records * targets];
+        }
+    }
+}
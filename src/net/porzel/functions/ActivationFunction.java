@@ -1,11 +1,57 @@
 package net.porzel.functions;
 
+import net.porzel.kernels.Kernels;
+
 public abstract class ActivationFunction {
+    public static final int CUSTOM = -1, RELU = 0, LEAKY_RELU = 1, SIGMOID = 2, TANH = 3, FAST_SIGMOID = 4, FAST_TANH = 5;
+    private final int function;
+
+    public ActivationFunction() {
+        this(CUSTOM);
+    }
+
+    private ActivationFunction(int function) {
+        this.function = function;
+    }
 
     public abstract void function(double[] x);
 
+    /**
+     * Returns the derivative of the function at the output x of the function.
+     * */
     public abstract double derivative(double x);
 
+    /**
+     * Writes the derivatives at the outputs out into dst. Built-in functions override this with a
+     * tight loop, so the backward pass computes the derivatives of a layer in one call.
+     * */
+    public void derivative(double[] out, double[] dst) {
+        for (int i = 0; i < out.length; i++)
+            dst[i] = derivative(out[i]);
+    }
+
+    /**
+     * Returns the id of the built-in function or CUSTOM for functions implemented outside of this class.
+     * */
+    public int getId() {
+        return function;
+    }
+
+    /**
+     * Returns a new instance of the built-in function with the given id.
+     * */
+    public static ActivationFunction byId(int id) {
+        switch (id) {
+            case RELU: return RELU();
+            case LEAKY_RELU: return LEAKY_RELU();
+            case SIGMOID: return SIGMOID();
+            case TANH: return TANH();
+            case FAST_SIGMOID: return FAST_SIGMOID();
+            case FAST_TANH: return FAST_TANH();
+            default: throw new RuntimeException("There is no built-in activation function with the id " + id + "!");
+        }
+    }
+
     /**
      * ReLU is a popular activation function in deep learning. Its advantages include computational
      * efficiency, speed, and sparsity, which can help with model interpretability and reduce
@@ -13,17 +59,22 @@ public abstract class ActivationFunction {
      * to a loss of model capacity and make it unsuitable for certain types of data.
      * */
     public static ActivationFunction RELU(){
-        return new ActivationFunction() {
+        return new ActivationFunction(RELU) {
             @Override
             public void function(double[] x) {
-                for (int i = 0; i < x.length; i++)
-                    x[i] = Math.max(0, x[i]);
+                Kernels.get().relu(x);
             }
 
             @Override
             public double derivative(double x) {
                 return x > 0 ? 1 : 0;
             }
+
+            @Override
+            public void derivative(double[] out, double[] dst) {
+                for (int i = 0; i < out.length; i++)
+                    dst[i] = out[i] > 0 ? 1 : 0;
+            }
         };
     }
 
@@ -39,17 +90,22 @@ public abstract class ActivationFunction {
      * which can be difficult to tune and may require additional computational resources to optimize.
      */
     public static ActivationFunction LEAKY_RELU() {
-        return new ActivationFunction() {
+        return new ActivationFunction(LEAKY_RELU) {
             @Override
             public void function(double[] x) {
-                for (int i = 0; i < x.length; i++)
-                    x[i] = x[i] > 0 ? x[i] : 0.01 * x[i];
+                Kernels.get().leakyRelu(x, 0.01);
             }
 
             @Override
             public double derivative(double x) {
                 return x > 0 ? 1 : 0.01;
             }
+
+            @Override
+            public void derivative(double[] out, double[] dst) {
+                for (int i = 0; i < out.length; i++)
+                    dst[i] = out[i] > 0 ? 1 : 0.01;
+            }
         };
     }
 
@@ -65,17 +121,22 @@ public abstract class ActivationFunction {
      * other activation functions like ReLU and its variants have become more popular in recent years.
      * */
     public static ActivationFunction SIGMOID(){
-        return new ActivationFunction() {
+        return new ActivationFunction(SIGMOID) {
             @Override
             public void function(double[] x) {
-                for (int i = 0; i < x.length; i++)
-                    x[i] = 1 / (1 + Math.exp(-x[i]));
+                Kernels.get().sigmoid(x);
             }
 
             @Override
             public double derivative(double x) {
                 return x * (1 - x);
             }
+
+            @Override
+            public void derivative(double[] out, double[] dst) {
+                for (int i = 0; i < out.length; i++)
+                    dst[i] = out[i] * (1 - out[i]);
+            }
         };
     }
 
@@ -90,16 +151,70 @@ public abstract class ActivationFunction {
      * potential numerical instability.
      * */
     public static ActivationFunction TANH(){
-        return new ActivationFunction() {
+        return new ActivationFunction(TANH) {
+            @Override
+            public void function(double[] x) {
+                Kernels.get().tanh(x);
+            }
+
+            @Override
+            public double derivative(double x) {
+                return 1 - x * x;
+            }
+
+            @Override
+            public void derivative(double[] out, double[] dst) {
+                for (int i = 0; i < out.length; i++)
+                    dst[i] = 1 - out[i] * out[i];
+            }
+        };
+    }
+
+    /**
+     * Fast-math version of SIGMOID that replaces the exponential with a rational approximation, which is
+     * several times faster than Math.exp and stays within 1.5e-7 of the exact sigmoid for every input. Like all
+     * derivatives, the derivative is computed from the cached output of the function.
+     * */
+    public static ActivationFunction FAST_SIGMOID(){
+        return new ActivationFunction(FAST_SIGMOID) {
             @Override
             public void function(double[] x) {
-                for (int i = 0; i < x.length; i++)
-                    x[i] = Math.tanh(x[i]);
+                Kernels.get().fastSigmoid(x);
             }
 
             @Override
             public double derivative(double x) {
-                return 1 - Math.pow(Math.tanh(x), 2);
+                return x * (1 - x);
+            }
+
+            @Override
+            public void derivative(double[] out, double[] dst) {
+                for (int i = 0; i < out.length; i++)
+                    dst[i] = out[i] * (1 - out[i]);
+            }
+        };
+    }
+
+    /**
+     * Fast-math version of TANH that replaces Math.tanh with a rational approximation, which is
+     * several times faster than Math.tanh and stays within 3e-7 of the exact tanh for every input.
+     * */
+    public static ActivationFunction FAST_TANH(){
+        return new ActivationFunction(FAST_TANH) {
+            @Override
+            public void function(double[] x) {
+                Kernels.get().fastTanh(x);
+            }
+
+            @Override
+            public double derivative(double x) {
+                return 1 - x * x;
+            }
+
+            @Override
+            public void derivative(double[] out, double[] dst) {
+                for (int i = 0; i < out.length; i++)
+                    dst[i] = 1 - out[i] * out[i];
             }
         };
     }
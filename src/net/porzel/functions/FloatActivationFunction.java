@@ -0,0 +1,154 @@
+package net.porzel.functions;
+
+import net.porzel.kernels.Kernels;
+
+/**
+ * Single precision counterpart of ActivationFunction, used by the FloatNeuralNetwork.
+ * The built-in functions share their ids with the double precision functions.
+ * */
+public abstract class FloatActivationFunction {
+    private final int function;
+
+    public FloatActivationFunction() {
+        this(ActivationFunction.CUSTOM);
+    }
+
+    private FloatActivationFunction(int function) {
+        this.function = function;
+    }
+
+    public abstract void function(float[] x);
+
+    /**
+     * Returns the derivative of the function at the output x of the function, like ActivationFunction.derivative.
+     * */
+    public abstract float derivative(float x);
+
+    public int getId() {
+        return function;
+    }
+
+    /**
+     * Returns the single precision version of the given built-in activation function.
+     * */
+    public static FloatActivationFunction of(ActivationFunction activationFunction) {
+        switch (activationFunction.getId()) {
+            case ActivationFunction.RELU: return RELU();
+            case ActivationFunction.LEAKY_RELU: return LEAKY_RELU();
+            case ActivationFunction.SIGMOID: return SIGMOID();
+            case ActivationFunction.TANH: return TANH();
+            case ActivationFunction.FAST_SIGMOID: return FAST_SIGMOID();
+            case ActivationFunction.FAST_TANH: return FAST_TANH();
+            default: throw new RuntimeException("Only built-in activation functions can be converted to single precision!");
+        }
+    }
+
+    /**
+     * Returns the double precision version of this built-in activation function.
+     * */
+    public ActivationFunction toActivationFunction() {
+        return ActivationFunction.byId(function);
+    }
+
+    /**
+     * @see ActivationFunction#RELU()
+     * */
+    public static FloatActivationFunction RELU() {
+        return new FloatActivationFunction(ActivationFunction.RELU) {
+            @Override
+            public void function(float[] x) {
+                Kernels.get().relu(x);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return x > 0 ? 1 : 0;
+            }
+        };
+    }
+
+    /**
+     * @see ActivationFunction#LEAKY_RELU()
+     * */
+    public static FloatActivationFunction LEAKY_RELU() {
+        return new FloatActivationFunction(ActivationFunction.LEAKY_RELU) {
+            @Override
+            public void function(float[] x) {
+                Kernels.get().leakyRelu(x, 0.01f);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return x > 0 ? 1 : 0.01f;
+            }
+        };
+    }
+
+    /**
+     * @see ActivationFunction#SIGMOID()
+     * */
+    public static FloatActivationFunction SIGMOID() {
+        return new FloatActivationFunction(ActivationFunction.SIGMOID) {
+            @Override
+            public void function(float[] x) {
+                Kernels.get().sigmoid(x);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return x * (1 - x);
+            }
+        };
+    }
+
+    /**
+     * @see ActivationFunction#TANH()
+     * */
+    public static FloatActivationFunction TANH() {
+        return new FloatActivationFunction(ActivationFunction.TANH) {
+            @Override
+            public void function(float[] x) {
+                Kernels.get().tanh(x);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return 1 - x * x;
+            }
+        };
+    }
+
+    /**
+     * @see ActivationFunction#FAST_SIGMOID()
+     * */
+    public static FloatActivationFunction FAST_SIGMOID() {
+        return new FloatActivationFunction(ActivationFunction.FAST_SIGMOID) {
+            @Override
+            public void function(float[] x) {
+                Kernels.get().fastSigmoid(x);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return x * (1 - x);
+            }
+        };
+    }
+
+    /**
+     * @see ActivationFunction#FAST_TANH()
+     * */
+    public static FloatActivationFunction FAST_TANH() {
+        return new FloatActivationFunction(ActivationFunction.FAST_TANH) {
+            @Override
+            public void function(float[] x) {
+                Kernels.get().fastTanh(x);
+            }
+
+            @Override
+            public float derivative(float x) {
+                return 1 - x * x;
+            }
+        };
+    }
+}
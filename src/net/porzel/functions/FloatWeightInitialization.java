@@ -0,0 +1,90 @@
+package net.porzel.functions;
+
+import net.porzel.random.RandomSource;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Single precision counterpart of WeightInitialization. The values are drawn exactly like the
+ * double precision initialization they are based on and rounded to float.
+ * */
+public final class FloatWeightInitialization {
+    private final WeightInitialization weightInitialization;
+
+    private FloatWeightInitialization(WeightInitialization weightInitialization) {
+        this.weightInitialization = weightInitialization;
+    }
+
+    public static FloatWeightInitialization of(WeightInitialization weightInitialization) {
+        return new FloatWeightInitialization(weightInitialization);
+    }
+
+    /**
+     * @see WeightInitialization#HE()
+     * */
+    public static FloatWeightInitialization HE() {
+        return of(WeightInitialization.HE());
+    }
+
+    /**
+     * @see WeightInitialization#LECUN()
+     * */
+    public static FloatWeightInitialization LECUN() {
+        return of(WeightInitialization.LECUN());
+    }
+
+    /**
+     * @see WeightInitialization#GLOROT()
+     * */
+    public static FloatWeightInitialization GLOROT() {
+        return of(WeightInitialization.GLOROT());
+    }
+
+    /**
+     * @see WeightInitialization#XAVIER()
+     * */
+    public static FloatWeightInitialization XAVIER() {
+        return of(WeightInitialization.XAVIER());
+    }
+
+    /**
+     * Initializes weights that are stored as one flat row-major matrix per layer,
+     * where field[layer] holds the weights of neurons[layer] neurons.
+     * */
+    public void function(float[][] field, int[] neurons, RandomGenerator random) {
+        double[][] values = allocate(field);
+        weightInitialization.function(values, neurons, random);
+        copy(values, field);
+    }
+
+    public void function(float[][] field, RandomGenerator random) {
+        double[][] values = allocate(field);
+        weightInitialization.function(values, random);
+        copy(values, field);
+    }
+
+    public void function(float[][] field, int[] neurons) {
+        function(field, neurons, RandomSource.create());
+    }
+
+    public void function(float[][] field) {
+        function(field, RandomSource.create());
+    }
+
+    private static double[][] allocate(float[][] field) {
+        double[][] values = new double[field.length][];
+
+        for (int layer = 0; layer < field.length; layer++)
+            values[layer] = new double[field[layer].length];
+
+        return values;
+    }
+
+    private static void copy(double[][] values, float[][] field) {
+        for (int layer = 0; layer < field.length; layer++) {
+            for (int i = 0; i < field[layer].length; i++) {
+                field[layer][i] = (float) values[layer][i];
+            }
+        }
+    }
+}
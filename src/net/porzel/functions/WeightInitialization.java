@@ -1,6 +1,8 @@
 package net.porzel.functions;
 
-import java.util.Random;
+import net.porzel.random.RandomSource;
+
+import java.util.random.RandomGenerator;
 
 public abstract class WeightInitialization {
     private static final int HE = 0, LECUN = 1, GLOROT = 2, XAVIER = 3, Test = 4;
@@ -21,9 +23,7 @@ public abstract class WeightInitialization {
     public static WeightInitialization HE() {
         return new WeightInitialization(HE) {
             @Override
-            public void function(double[][][] field) {
-                Random random = new Random();
-
+            public void function(double[][][] field, RandomGenerator random) {
                 for (int layer = 0; layer < field.length; layer++) {
                     double std = Math.sqrt(2.0 / field[layer].length);
 
@@ -36,9 +36,7 @@ public abstract class WeightInitialization {
             }
 
             @Override
-            public void function(double[][] field) {
-                Random random = new Random();
-
+            public void function(double[][] field, RandomGenerator random) {
                 for (int layer = 0; layer < field.length; layer++) {
                     double std = Math.sqrt(2.0 / field[layer].length);
 
@@ -47,6 +45,17 @@ public abstract class WeightInitialization {
                     }
                 }
             }
+
+            @Override
+            public void function(double[][] field, int[] neurons, RandomGenerator random) {
+                for (int layer = 0; layer < field.length; layer++) {
+                    double std = Math.sqrt(2.0 / neurons[layer]);
+
+                    for (int weight = 0; weight < field[layer].length; weight++) {
+                        field[layer][weight] = random.nextGaussian() * std;
+                    }
+                }
+            }
         };
     }
 
@@ -61,9 +70,7 @@ public abstract class WeightInitialization {
     public static WeightInitialization LECUN() {
         return new WeightInitialization(LECUN) {
             @Override
-            public void function(double[][][] field) {
-                Random random = new Random();
-
+            public void function(double[][][] field, RandomGenerator random) {
                 for (int layer = 0; layer < field.length; layer++) {
                     double std = 1.0 / Math.sqrt(field[layer].length);
 
@@ -76,9 +83,7 @@ public abstract class WeightInitialization {
             }
 
             @Override
-            public void function(double[][] field) {
-                Random random = new Random();
-
+            public void function(double[][] field, RandomGenerator random) {
                 for (int layer = 0; layer < field.length; layer++) {
                     double std = 1.0 / Math.sqrt(field[layer].length);
 
@@ -87,6 +92,17 @@ public abstract class WeightInitialization {
                     }
                 }
             }
+
+            @Override
+            public void function(double[][] field, int[] neurons, RandomGenerator random) {
+                for (int layer = 0; layer < field.length; layer++) {
+                    double std = 1.0 / Math.sqrt(neurons[layer]);
+
+                    for (int weight = 0; weight < field[layer].length; weight++) {
+                        field[layer][weight] = random.nextGaussian() * std;
+                    }
+                }
+            }
         };
     }
 
@@ -103,9 +119,7 @@ public abstract class WeightInitialization {
     public static WeightInitialization GLOROT() {
         return new WeightInitialization(GLOROT) {
             @Override
-            public void function(double[][][] field) {
-                Random random = new Random();
-
+            public void function(double[][][] field, RandomGenerator random) {
                 for (int layer = 0; layer < field.length; layer++) {
                     double range = Math.sqrt(2.0 / (field[layer].length + 1));
 
@@ -118,9 +132,7 @@ public abstract class WeightInitialization {
             }
 
             @Override
-            public void function(double[][] field) {
-                Random random = new Random();
-
+            public void function(double[][] field, RandomGenerator random) {
                 for (int layer = 0; layer < field.length; layer++) {
                     double range = Math.sqrt(2.0 / (field[layer].length + 1));
 
@@ -129,6 +141,17 @@ public abstract class WeightInitialization {
                     }
                 }
             }
+
+            @Override
+            public void function(double[][] field, int[] neurons, RandomGenerator random) {
+                for (int layer = 0; layer < field.length; layer++) {
+                    double range = Math.sqrt(2.0 / (neurons[layer] + 1));
+
+                    for (int weight = 0; weight < field[layer].length; weight++) {
+                        field[layer][weight] = random.nextDouble() * 2 * range - range;
+                    }
+                }
+            }
         };
     }
 
@@ -146,8 +169,7 @@ public abstract class WeightInitialization {
     public static WeightInitialization XAVIER() {
         return new WeightInitialization(XAVIER) {
             @Override
-            public void function(double[][][] field) {
-                Random random = new Random();
+            public void function(double[][][] field, RandomGenerator random) {
                 double range = Math.sqrt(6.0 / (field[0].length + field[field.length - 1].length));
 
                 for (int layer = 0; layer < field.length; layer++) {
@@ -160,8 +182,7 @@ public abstract class WeightInitialization {
             }
 
             @Override
-            public void function(double[][] field) {
-                Random random = new Random();
+            public void function(double[][] field, RandomGenerator random) {
                 double range = Math.sqrt(1.0 / (field[0].length + field[field.length - 1].length));
 
                 for (int layer = 0; layer < field.length; layer++) {
@@ -170,10 +191,46 @@ public abstract class WeightInitialization {
                     }
                 }
             }
+
+            @Override
+            public void function(double[][] field, int[] neurons, RandomGenerator random) {
+                double range = Math.sqrt(6.0 / (neurons[0] + neurons[neurons.length - 1]));
+
+                for (int layer = 0; layer < field.length; layer++) {
+                    for (int weight = 0; weight < field[layer].length; weight++) {
+                        field[layer][weight] = random.nextDouble() * 2 * range - range;
+                    }
+                }
+            }
         };
     }
 
-    public abstract void function(double[][][] field);
+    /**
+     * Returns the id of the initialization function, which is stored in saved models.
+     * */
+    public int getId() {
+        return function;
+    }
+
+    public abstract void function(double[][][] field, RandomGenerator random);
+
+    public abstract void function(double[][] field, RandomGenerator random);
+
+    /**
+     * Initializes weights that are stored as one flat row-major matrix per layer,
+     * where field[layer] holds the weights of neurons[layer] neurons.
+     * */
+    public abstract void function(double[][] field, int[] neurons, RandomGenerator random);
+
+    public void function(double[][][] field) {
+        function(field, RandomSource.create());
+    }
+
+    public void function(double[][] field) {
+        function(field, RandomSource.create());
+    }
 
-    public abstract void function(double[][] field);
+    public void function(double[][] field, int[] neurons) {
+        function(field, neurons, RandomSource.create());
+    }
 }
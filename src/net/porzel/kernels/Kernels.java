@@ -0,0 +1,162 @@
+package net.porzel.kernels;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Array kernels used by the inner loops of the network. When the jdk.incubator.vector module is
+ * available (--add-modules jdk.incubator.vector) the kernels are computed with the Java Vector API
+ * using the preferred vector width of the CPU, otherwise with plain scalar loops. Starting the JVM
+ * with -Dnet.porzel.kernels=scalar forces the scalar kernels.
+ * */
+public abstract class Kernels {
+    private static final Kernels KERNELS = load();
+
+    //RATIONAL APPROXIMATION OF TANH, ODD NUMERATOR OF DEGREE 13 AND EVEN DENOMINATOR OF DEGREE 6
+    static final double TANH_CLAMP = 7.90531110763549805;
+    static final double A1 = 4.89352455891786e-03, A3 = 6.37261928875436e-04, A5 = 1.48572235717979e-05,
+            A7 = 5.12229709037114e-08, A9 = -8.60467152213735e-11, A11 = 2.00018790482477e-13, A13 = -2.76076847742355e-16;
+    static final double B0 = 4.89352518554385e-03, B2 = 2.26843463243900e-03, B4 = 1.18534705686654e-04, B6 = 1.19825839466702e-06;
+
+    public static Kernels get() {
+        return KERNELS;
+    }
+
+    private static Kernels load() {
+        if(!"scalar".equals(System.getProperty("net.porzel.kernels"))) {
+            try {
+                return (Kernels) Class.forName("net.porzel.kernels.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                //The incubator module is not available, use the scalar kernels
+            }
+        }
+
+        return new ScalarKernels();
+    }
+
+    public abstract String getName();
+
+    static double fastTanh(double x) {
+        x = Math.max(-TANH_CLAMP, Math.min(TANH_CLAMP, x));
+
+        double x2 = x * x;
+        double p = ((((((A13 * x2 + A11) * x2 + A9) * x2 + A7) * x2 + A5) * x2 + A3) * x2 + A1) * x;
+        double q = ((B6 * x2 + B4) * x2 + B2) * x2 + B0;
+
+        return p / q;
+    }
+
+    static float fastTanh(float x) {
+        x = Math.max((float) -TANH_CLAMP, Math.min((float) TANH_CLAMP, x));
+
+        float x2 = x * x;
+        float p = ((((((float) A13 * x2 + (float) A11) * x2 + (float) A9) * x2 + (float) A7) * x2 + (float) A5) * x2 + (float) A3) * x2 + (float) A1;
+        float q = (((float) B6 * x2 + (float) B4) * x2 + (float) B2) * x2 + (float) B0;
+
+        return p * x / q;
+    }
+
+    /**
+     * Returns the sum of a[aOffset + i] * b[bOffset + i] for i in [0, length).
+     * */
+    public abstract double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * Computes the dot products of b with the four rows of a that start at aOffset + row * aStride
+     * and writes them into sums[0..3]. Every element of b is loaded once for all four rows.
+     * */
+    public abstract void dot4(double[] a, int aOffset, int aStride, double[] b, int bOffset, int length, double[] sums);
+
+    /**
+     * Adds alpha * x[xOffset + i] to y[yOffset + i] for i in [0, length).
+     * */
+    public abstract void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    public abstract void relu(double[] x);
+
+    public abstract void leakyRelu(double[] x, double slope);
+
+    public abstract void sigmoid(double[] x);
+
+    public abstract void tanh(double[] x);
+
+    /**
+     * Computes tanh with a rational approximation that only needs multiplications and one division.
+     * The input is clamped to +-7.9053, the absolute error is below 3e-7 everywhere.
+     * */
+    public abstract void fastTanh(double[] x);
+
+    /**
+     * Computes the sigmoid as 0.5 + 0.5 * fastTanh(0.5 * x), the absolute error is below 1.5e-7 everywhere.
+     * */
+    public abstract void fastSigmoid(double[] x);
+
+    /**
+     * Fused momentum update of x with the scaled gradient d = alpha * g:
+     * v = momentum * v + d, x += learningRate * v, or x += learningRate * (momentum * v + d) for Nesterov.
+     * */
+    public abstract void momentum(double alpha, double[] g, double momentum, double[] v, double[] x, double learningRate, boolean nesterov);
+
+    /**
+     * Fused RMSProp update of x with the scaled gradient d = alpha * g:
+     * s = decay * s + (1 - decay) * d * d, x += learningRate * d / (sqrt(s) + epsilon).
+     * */
+    public abstract void rmsProp(double alpha, double[] g, double decay, double[] s, double[] x, double learningRate, double epsilon);
+
+    /**
+     * Fused Adam update of x with the scaled gradient d = alpha * g: m = beta1 * m + (1 - beta1) * d,
+     * v = beta2 * v + (1 - beta2) * d * d, x = x * (1 - weightDecay) + stepSize * m / (sqrt(v) + epsilon).
+     * The bias correction is expected to be folded into stepSize and epsilon by the caller.
+     * */
+    public abstract void adam(double alpha, double[] g, double beta1, double[] m, double beta2, double[] v, double[] x, double stepSize, double epsilon, double weightDecay);
+
+    public abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    public abstract void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    public abstract void relu(float[] x);
+
+    public abstract void leakyRelu(float[] x, float slope);
+
+    public abstract void sigmoid(float[] x);
+
+    public abstract void tanh(float[] x);
+
+    /**
+     * Single precision fastTanh, the absolute error is below 5e-7 everywhere.
+     * */
+    public abstract void fastTanh(float[] x);
+
+    /**
+     * Single precision fastSigmoid, the absolute error is below 3e-7 everywhere.
+     * */
+    public abstract void fastSigmoid(float[] x);
+
+    /**
+     * Returns the sum of a[aOffset + i] * b[bOffset + i] for i in [0, length) with int accumulation.
+     * Products of int8 values fit into 15 bits, so the sum cant overflow for lengths below 131072.
+     * */
+    public abstract int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length);
+
+    /**
+     * Adds alpha * x[xOffset + i] to y[yOffset + i] for i in [0, length) with int arithmetic.
+     * */
+    public abstract void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length);
+
+    /**
+     * Returns the sum of a[aOffset + i] * b[bIndex + i] for i in [0, length), where b is a
+     * little-endian buffer of doubles that is indexed in doubles, not bytes.
+     * */
+    public abstract double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length);
+
+    /**
+     * Adds alpha * x[xIndex + i] to y[yOffset + i] for i in [0, length), where x is a little-endian
+     * buffer of doubles indexed in doubles.
+     * */
+    public abstract void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length);
+
+    /**
+     * Adds alpha * x[xOffset + i] to y[yIndex + i] for i in [0, length), where y is a little-endian
+     * buffer of doubles indexed in doubles.
+     * */
+    public abstract void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length);
+}
@@ -0,0 +1,204 @@
+package net.porzel.kernels;
+
+import java.nio.ByteBuffer;
+
+final class ScalarKernels extends Kernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+
+        return sum;
+    }
+
+    @Override
+    public void dot4(double[] a, int aOffset, int aStride, double[] b, int bOffset, int length, double[] sums) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+
+        for (int i = 0; i < length; i++) {
+            double value = b[bOffset + i];
+            sum0 += a[aOffset + i] * value;
+            sum1 += a[aOffset + aStride + i] * value;
+            sum2 += a[aOffset + 2 * aStride + i] * value;
+            sum3 += a[aOffset + 3 * aStride + i] * value;
+        }
+
+        sums[0] = sum0;
+        sums[1] = sum1;
+        sums[2] = sum2;
+        sums[3] = sum3;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public void relu(double[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = Math.max(0, x[i]);
+    }
+
+    @Override
+    public void leakyRelu(double[] x, double slope) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = x[i] > 0 ? x[i] : slope * x[i];
+    }
+
+    @Override
+    public void sigmoid(double[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = 1 / (1 + Math.exp(-x[i]));
+    }
+
+    @Override
+    public void tanh(double[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = Math.tanh(x[i]);
+    }
+
+    @Override
+    public void fastTanh(double[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = fastTanh(x[i]);
+    }
+
+    @Override
+    public void fastSigmoid(double[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = 0.5 + 0.5 * fastTanh(0.5 * x[i]);
+    }
+
+    @Override
+    public void momentum(double alpha, double[] g, double momentum, double[] v, double[] x, double learningRate, boolean nesterov) {
+        for (int i = 0; i < x.length; i++) {
+            double d = alpha * g[i];
+
+            v[i] = momentum * v[i] + d;
+            x[i] += learningRate * (nesterov ? momentum * v[i] + d : v[i]);
+        }
+    }
+
+    @Override
+    public void rmsProp(double alpha, double[] g, double decay, double[] s, double[] x, double learningRate, double epsilon) {
+        for (int i = 0; i < x.length; i++) {
+            double d = alpha * g[i];
+
+            s[i] = decay * s[i] + (1 - decay) * d * d;
+            x[i] += learningRate * d / (Math.sqrt(s[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public void adam(double alpha, double[] g, double beta1, double[] m, double beta2, double[] v, double[] x, double stepSize, double epsilon, double weightDecay) {
+        for (int i = 0; i < x.length; i++) {
+            double d = alpha * g[i];
+
+            m[i] = beta1 * m[i] + (1 - beta1) * d;
+            v[i] = beta2 * v[i] + (1 - beta2) * d * d;
+            x[i] = x[i] * (1 - weightDecay) + stepSize * m[i] / (Math.sqrt(v[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+
+        return sum;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public void relu(float[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = Math.max(0, x[i]);
+    }
+
+    @Override
+    public void leakyRelu(float[] x, float slope) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = x[i] > 0 ? x[i] : slope * x[i];
+    }
+
+    @Override
+    public void sigmoid(float[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = (float) (1 / (1 + Math.exp(-x[i])));
+    }
+
+    @Override
+    public void tanh(float[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = (float) Math.tanh(x[i]);
+    }
+
+    @Override
+    public void fastTanh(float[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = fastTanh(x[i]);
+    }
+
+    @Override
+    public void fastSigmoid(float[] x) {
+        for (int i = 0; i < x.length; i++)
+            x[i] = 0.5f + 0.5f * fastTanh(0.5f * x[i]);
+    }
+
+    @Override
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b[bOffset + i];
+
+        return sum;
+    }
+
+    @Override
+    public void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length) {
+        double sum = 0;
+
+        for (int i = 0; i < length; i++)
+            sum += a[aOffset + i] * b.getDouble((bIndex + i) << 3);
+
+        return sum;
+    }
+
+    @Override
+    public void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++)
+            y[yOffset + i] += alpha * x.getDouble((xIndex + i) << 3);
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            int index = (yIndex + i) << 3;
+            y.putDouble(index, y.getDouble(index) + alpha * x[xOffset + i]);
+        }
+    }
+}
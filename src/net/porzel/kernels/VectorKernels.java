@@ -0,0 +1,440 @@
+package net.porzel.kernels;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Kernels on top of the incubating Java Vector API. Only loaded through reflection by Kernels,
+ * so the library keeps working when the jdk.incubator.vector module is not present.
+ * */
+final class VectorKernels extends Kernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    //BYTES WITH ONE LANE PER INT LANE, WIDENED TO INTS BEFORE THE MULTIPLICATION (THE SMALLEST BYTE SHAPE IS 64 BIT)
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED.vectorBitSize() >= 256 ? IntVector.SPECIES_PREFERRED : IntVector.SPECIES_256;
+    private static final VectorSpecies<Byte> BYTE_SPECIES = VectorSpecies.of(byte.class, VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / 4));
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + " bit)";
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+
+        double result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+
+        return result;
+    }
+
+    @Override
+    public void dot4(double[] a, int aOffset, int aStride, double[] b, int bOffset, int length, double[] sums) {
+        DoubleVector sum0 = DoubleVector.zero(SPECIES), sum1 = sum0, sum2 = sum0, sum3 = sum0;
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            sum0 = DoubleVector.fromArray(SPECIES, a, aOffset + i).fma(vb, sum0);
+            sum1 = DoubleVector.fromArray(SPECIES, a, aOffset + aStride + i).fma(vb, sum1);
+            sum2 = DoubleVector.fromArray(SPECIES, a, aOffset + 2 * aStride + i).fma(vb, sum2);
+            sum3 = DoubleVector.fromArray(SPECIES, a, aOffset + 3 * aStride + i).fma(vb, sum3);
+        }
+
+        double result0 = sum0.reduceLanes(VectorOperators.ADD), result1 = sum1.reduceLanes(VectorOperators.ADD);
+        double result2 = sum2.reduceLanes(VectorOperators.ADD), result3 = sum3.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++) {
+            double value = b[bOffset + i];
+            result0 += a[aOffset + i] * value;
+            result1 += a[aOffset + aStride + i] * value;
+            result2 += a[aOffset + 2 * aStride + i] * value;
+            result3 += a[aOffset + 3 * aStride + i] * value;
+        }
+
+        sums[0] = result0;
+        sums[1] = result1;
+        sums[2] = result2;
+        sums[3] = result3;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            vx.fma(va, vy).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public void relu(double[] x) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, i).max(0).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = Math.max(0, x[i]);
+    }
+
+    @Override
+    public void leakyRelu(double[] x, double slope) {
+        int i = 0;
+
+        //max(x, slope * x) equals the leaky ReLU for every slope below 1
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, i);
+            v.max(v.mul(slope)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++)
+            x[i] = x[i] > 0 ? x[i] : slope * x[i];
+    }
+
+    @Override
+    public void sigmoid(double[] x) {
+        int i = 0;
+
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length()) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, x, i);
+            one.div(v.neg().lanewise(VectorOperators.EXP).add(one)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++)
+            x[i] = 1 / (1 + Math.exp(-x[i]));
+    }
+
+    @Override
+    public void tanh(double[] x) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, x, i).lanewise(VectorOperators.TANH).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = Math.tanh(x[i]);
+    }
+
+    @Override
+    public void fastTanh(double[] x) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length())
+            fastTanh(DoubleVector.fromArray(SPECIES, x, i)).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = fastTanh(x[i]);
+    }
+
+    @Override
+    public void fastSigmoid(double[] x) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length())
+            fastTanh(DoubleVector.fromArray(SPECIES, x, i).mul(0.5)).fma(0.5, 0.5).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = 0.5 + 0.5 * fastTanh(0.5 * x[i]);
+    }
+
+    private static DoubleVector fastTanh(DoubleVector x) {
+        x = x.max(-TANH_CLAMP).min(TANH_CLAMP);
+
+        DoubleVector x2 = x.mul(x);
+        DoubleVector p = x2.fma(A13, A11).fma(x2, DoubleVector.broadcast(SPECIES, A9)).fma(x2, DoubleVector.broadcast(SPECIES, A7))
+                .fma(x2, DoubleVector.broadcast(SPECIES, A5)).fma(x2, DoubleVector.broadcast(SPECIES, A3)).fma(x2, DoubleVector.broadcast(SPECIES, A1)).mul(x);
+        DoubleVector q = x2.fma(B6, B4).fma(x2, DoubleVector.broadcast(SPECIES, B2)).fma(x2, DoubleVector.broadcast(SPECIES, B0));
+
+        return p.div(q);
+    }
+
+    @Override
+    public void momentum(double alpha, double[] g, double momentum, double[] v, double[] x, double learningRate, boolean nesterov) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length()) {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, g, i).mul(alpha);
+            DoubleVector vv = DoubleVector.fromArray(SPECIES, v, i).fma(DoubleVector.broadcast(SPECIES, momentum), d);
+            DoubleVector step = nesterov ? vv.fma(DoubleVector.broadcast(SPECIES, momentum), d) : vv;
+
+            vv.intoArray(v, i);
+            step.fma(DoubleVector.broadcast(SPECIES, learningRate), DoubleVector.fromArray(SPECIES, x, i)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++) {
+            double d = alpha * g[i];
+
+            v[i] = momentum * v[i] + d;
+            x[i] += learningRate * (nesterov ? momentum * v[i] + d : v[i]);
+        }
+    }
+
+    @Override
+    public void rmsProp(double alpha, double[] g, double decay, double[] s, double[] x, double learningRate, double epsilon) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length()) {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, g, i).mul(alpha);
+            DoubleVector vs = DoubleVector.fromArray(SPECIES, s, i).mul(decay).add(d.mul(d).mul(1 - decay));
+
+            vs.intoArray(s, i);
+            d.mul(learningRate).div(vs.sqrt().add(epsilon)).add(DoubleVector.fromArray(SPECIES, x, i)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++) {
+            double d = alpha * g[i];
+
+            s[i] = decay * s[i] + (1 - decay) * d * d;
+            x[i] += learningRate * d / (Math.sqrt(s[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public void adam(double alpha, double[] g, double beta1, double[] m, double beta2, double[] v, double[] x, double stepSize, double epsilon, double weightDecay) {
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(x.length); i < bound; i += SPECIES.length()) {
+            DoubleVector d = DoubleVector.fromArray(SPECIES, g, i).mul(alpha);
+            DoubleVector vm = DoubleVector.fromArray(SPECIES, m, i).mul(beta1).add(d.mul(1 - beta1));
+            DoubleVector vv = DoubleVector.fromArray(SPECIES, v, i).mul(beta2).add(d.mul(d).mul(1 - beta2));
+
+            vm.intoArray(m, i);
+            vv.intoArray(v, i);
+            vm.mul(stepSize).div(vv.sqrt().add(epsilon)).add(DoubleVector.fromArray(SPECIES, x, i).mul(1 - weightDecay)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++) {
+            double d = alpha * g[i];
+
+            m[i] = beta1 * m[i] + (1 - beta1) * d;
+            v[i] = beta2 * v[i] + (1 - beta2) * d * d;
+            x[i] = x[i] * (1 - weightDecay) + stepSize * m[i] / (Math.sqrt(v[i]) + epsilon);
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOAT_SPECIES);
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+
+        float result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+
+        return result;
+    }
+
+    @Override
+    public void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        FloatVector va = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+            FloatVector vy = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+            vx.fma(va, vy).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public void relu(float[] x) {
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(x.length); i < bound; i += FLOAT_SPECIES.length())
+            FloatVector.fromArray(FLOAT_SPECIES, x, i).max(0).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = Math.max(0, x[i]);
+    }
+
+    @Override
+    public void leakyRelu(float[] x, float slope) {
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(x.length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector v = FloatVector.fromArray(FLOAT_SPECIES, x, i);
+            v.max(v.mul(slope)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++)
+            x[i] = x[i] > 0 ? x[i] : slope * x[i];
+    }
+
+    @Override
+    public void sigmoid(float[] x) {
+        FloatVector one = FloatVector.broadcast(FLOAT_SPECIES, 1);
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(x.length); i < bound; i += FLOAT_SPECIES.length()) {
+            FloatVector v = FloatVector.fromArray(FLOAT_SPECIES, x, i);
+            one.div(v.neg().lanewise(VectorOperators.EXP).add(one)).intoArray(x, i);
+        }
+
+        for (; i < x.length; i++)
+            x[i] = (float) (1 / (1 + Math.exp(-x[i])));
+    }
+
+    @Override
+    public void tanh(float[] x) {
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(x.length); i < bound; i += FLOAT_SPECIES.length())
+            FloatVector.fromArray(FLOAT_SPECIES, x, i).lanewise(VectorOperators.TANH).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = (float) Math.tanh(x[i]);
+    }
+
+    @Override
+    public void fastTanh(float[] x) {
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(x.length); i < bound; i += FLOAT_SPECIES.length())
+            fastTanh(FloatVector.fromArray(FLOAT_SPECIES, x, i)).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = fastTanh(x[i]);
+    }
+
+    @Override
+    public void fastSigmoid(float[] x) {
+        int i = 0;
+
+        for (int bound = FLOAT_SPECIES.loopBound(x.length); i < bound; i += FLOAT_SPECIES.length())
+            fastTanh(FloatVector.fromArray(FLOAT_SPECIES, x, i).mul(0.5f)).fma(0.5f, 0.5f).intoArray(x, i);
+
+        for (; i < x.length; i++)
+            x[i] = 0.5f + 0.5f * fastTanh(0.5f * x[i]);
+    }
+
+    private static FloatVector fastTanh(FloatVector x) {
+        x = x.max((float) -TANH_CLAMP).min((float) TANH_CLAMP);
+
+        FloatVector x2 = x.mul(x);
+        FloatVector p = x2.fma((float) A13, (float) A11).fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) A9)).fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) A7))
+                .fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) A5)).fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) A3)).fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) A1)).mul(x);
+        FloatVector q = x2.fma((float) B6, (float) B4).fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) B2)).fma(x2, FloatVector.broadcast(FLOAT_SPECIES, (float) B0));
+
+        return p.div(q);
+    }
+
+    @Override
+    public int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        IntVector sum = IntVector.zero(INT_SPECIES);
+        int i = 0;
+
+        for (int bound = BYTE_SPECIES.loopBound(length); i < bound; i += BYTE_SPECIES.length()) {
+            IntVector va = (IntVector) ByteVector.fromArray(BYTE_SPECIES, a, aOffset + i).convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            IntVector vb = (IntVector) ByteVector.fromArray(BYTE_SPECIES, b, bOffset + i).convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            sum = sum.add(va.mul(vb));
+        }
+
+        int result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+            result += a[aOffset + i] * b[bOffset + i];
+
+        return result;
+    }
+
+    @Override
+    public void axpy(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        int i = 0;
+
+        for (int bound = BYTE_SPECIES.loopBound(length); i < bound; i += BYTE_SPECIES.length()) {
+            IntVector vx = (IntVector) ByteVector.fromArray(BYTE_SPECIES, x, xOffset + i).convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            vx.mul(alpha).add(IntVector.fromArray(INT_SPECIES, y, yOffset + i)).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++)
+            y[yOffset + i] += alpha * x[xOffset + i];
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, ByteBuffer b, int bIndex, int length) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector vb = DoubleVector.fromByteBuffer(SPECIES, b, (bIndex + i) << 3, ByteOrder.LITTLE_ENDIAN);
+            sum = va.fma(vb, sum);
+        }
+
+        double result = sum.reduceLanes(VectorOperators.ADD);
+
+        for (; i < length; i++)
+            result += a[aOffset + i] * b.getDouble((bIndex + i) << 3);
+
+        return result;
+    }
+
+    @Override
+    public void axpy(double alpha, ByteBuffer x, int xIndex, double[] y, int yOffset, int length) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromByteBuffer(SPECIES, x, (xIndex + i) << 3, ByteOrder.LITTLE_ENDIAN);
+            DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            vx.fma(va, vy).intoArray(y, yOffset + i);
+        }
+
+        for (; i < length; i++)
+            y[yOffset + i] += alpha * x.getDouble((xIndex + i) << 3);
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, ByteBuffer y, int yIndex, int length) {
+        DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector vy = DoubleVector.fromByteBuffer(SPECIES, y, (yIndex + i) << 3, ByteOrder.LITTLE_ENDIAN);
+            vx.fma(va, vy).intoByteBuffer(y, (yIndex + i) << 3, ByteOrder.LITTLE_ENDIAN);
+        }
+
+        for (; i < length; i++) {
+            int index = (yIndex + i) << 3;
+            y.putDouble(index, y.getDouble(index) + alpha * x[xOffset + i]);
+        }
+    }
+}
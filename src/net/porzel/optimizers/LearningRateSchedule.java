@@ -0,0 +1,86 @@
+package net.porzel.optimizers;
+
+/**
+ * Changes the learning rate of a network over the course of the training. The schedule scales the
+ * learning rate that is set on the network depending on the number of the update, starting with 1.
+ * */
+public abstract class LearningRateSchedule {
+
+    public LearningRateSchedule() {
+    }
+
+    public abstract double learningRate(double learningRate, long step);
+
+    public static LearningRateSchedule CONSTANT() {
+        return new LearningRateSchedule() {
+            @Override
+            public double learningRate(double learningRate, long step) {
+                return learningRate;
+            }
+        };
+    }
+
+    /**
+     * Multiplies the learning rate by factor every interval updates.
+     * */
+    public static LearningRateSchedule STEP(double factor, long interval) {
+        if(interval <= 0)
+            throw new RuntimeException("The interval must be greater than 0!");
+
+        return new LearningRateSchedule() {
+            @Override
+            public double learningRate(double learningRate, long step) {
+                return learningRate * Math.pow(factor, (step - 1) / interval);
+            }
+        };
+    }
+
+    /**
+     * Multiplies the learning rate by decay after every update.
+     * */
+    public static LearningRateSchedule EXPONENTIAL(double decay) {
+        return new LearningRateSchedule() {
+            @Override
+            public double learningRate(double learningRate, long step) {
+                return learningRate * Math.pow(decay, step - 1);
+            }
+        };
+    }
+
+    /**
+     * Anneals the learning rate along a half cosine to minimum * learningRate within steps updates
+     * and keeps it there afterwards.
+     * */
+    public static LearningRateSchedule COSINE(long steps, double minimum) {
+        if(steps <= 0)
+            throw new RuntimeException("The steps must be greater than 0!");
+
+        return new LearningRateSchedule() {
+            @Override
+            public double learningRate(double learningRate, long step) {
+                double progress = Math.min(1, (double) (step - 1) / steps);
+
+                return learningRate * (minimum + (1 - minimum) * 0.5 * (1 + Math.cos(Math.PI * progress)));
+            }
+        };
+    }
+
+    /**
+     * Increases the learning rate linearly during the first steps updates and continues with the
+     * given schedule afterwards, which then sees the updates counted from the end of the warmup.
+     * */
+    public static LearningRateSchedule WARMUP(long steps, LearningRateSchedule schedule) {
+        if(steps <= 0)
+            throw new RuntimeException("The steps must be greater than 0!");
+
+        return new LearningRateSchedule() {
+            @Override
+            public double learningRate(double learningRate, long step) {
+                if(step <= steps)
+                    return learningRate * step / steps;
+
+                return schedule.learningRate(learningRate, step - steps);
+            }
+        };
+    }
+}
@@ -0,0 +1,251 @@
+package net.porzel.optimizers;
+
+import net.porzel.kernels.Kernels;
+
+import java.util.Arrays;
+
+/**
+ * Update rule that applies the accumulated gradient of a batch to the parameters of a network.
+ * Every parameter array of the network (the weights and the biases of each layer) has a fixed index,
+ * the state of the optimizer is kept in buffers with the same layout as the parameter array, and the
+ * update of one array is a single fused pass over the parameters, the gradient and the state.
+ * <p>
+ * An optimizer keeps the state of the network it was set on, so every network needs its own instance.
+ * */
+public abstract class Optimizer {
+    private double[][] first = new double[0][], second = new double[0][];
+
+    public Optimizer() {
+    }
+
+    /**
+     * Applies the gradient to values. The gradient points in the direction of a smaller error and is
+     * multiplied by scale before it is used, step is the number of the update starting with 1.
+     * */
+    public abstract void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step);
+
+    /**
+     * Sparse counterpart of update for a row-major parameter matrix with the given number of columns.
+     * Only the entries in the first count columns of the columns array are updated, together with
+     * their state, the gradient of the other columns is treated as absent instead of zero. Like a lazy
+     * Adam, momentum and weight decay of a column therefore only advance in updates that touch it.
+     * Optimizers that dont override it cant be used for sparse training.
+     * */
+    public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step, int width, int[] columns, int count) {
+        throw new RuntimeException("This optimizer doesnt support sparse updates!");
+    }
+
+    /**
+     * Drops the state, so the next update starts like the first one.
+     * */
+    public void reset() {
+        first = new double[0][];
+        second = new double[0][];
+    }
+
+    /**
+     * Returns the state buffer (0 for the first, 1 for the second) of the parameter or null if the
+     * optimizer has not created it. The returned array is the live state, not a copy.
+     * */
+    public final double[] getState(int buffer, int parameter) {
+        double[][] state = buffer == 0 ? first : second;
+
+        return parameter < state.length ? state[parameter] : null;
+    }
+
+    /**
+     * Replaces the state buffer (0 for the first, 1 for the second) of the parameter with a copy of values.
+     * */
+    public final void setState(int buffer, int parameter, double[] values) {
+        double[] state = buffer == 0 ? first(parameter, values.length) : second(parameter, values.length);
+
+        System.arraycopy(values, 0, state, 0, values.length);
+    }
+
+    /**
+     * Returns the first state buffer of the parameter, which has the same length as the parameter array.
+     * */
+    protected final double[] first(int parameter, int length) {
+        if(parameter >= first.length)
+            first = Arrays.copyOf(first, parameter + 1);
+
+        if(first[parameter] == null || first[parameter].length != length)
+            first[parameter] = new double[length];
+
+        return first[parameter];
+    }
+
+    /**
+     * Returns the second state buffer of the parameter, which has the same length as the parameter array.
+     * */
+    protected final double[] second(int parameter, int length) {
+        if(parameter >= second.length)
+            second = Arrays.copyOf(second, parameter + 1);
+
+        if(second[parameter] == null || second[parameter].length != length)
+            second[parameter] = new double[length];
+
+        return second[parameter];
+    }
+
+    /**
+     * Plain stochastic gradient descent, the parameters are moved by the learning rate times the gradient.
+     * */
+    public static Optimizer SGD() {
+        return new Optimizer() {
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step) {
+                Kernels.get().axpy(scale * learningRate, gradient, 0, values, 0, values.length);
+            }
+
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step, int width, int[] columns, int count) {
+                double alpha = scale * learningRate;
+
+                for (int offset = 0; offset < values.length; offset += width) {
+                    for (int column = 0; column < count; column++) {
+                        int i = offset + columns[column];
+
+                        values[i] += alpha * gradient[i];
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Gradient descent with momentum. The velocity accumulates the gradients of the previous updates,
+     * which dampens oscillations and speeds up the descent along consistent directions.
+     * */
+    public static Optimizer MOMENTUM(double momentum) {
+        return momentum(momentum, false);
+    }
+
+    /**
+     * Nesterov accelerated gradient, a momentum variant that corrects the velocity with a look ahead
+     * on the current gradient and usually converges a bit faster and more stable than MOMENTUM.
+     * */
+    public static Optimizer NESTEROV(double momentum) {
+        return momentum(momentum, true);
+    }
+
+    private static Optimizer momentum(double momentum, boolean nesterov) {
+        if(momentum < 0 || momentum >= 1)
+            throw new RuntimeException("The momentum must be in [0, 1)!");
+
+        return new Optimizer() {
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step) {
+                Kernels.get().momentum(scale, gradient, momentum, first(parameter, values.length), values, learningRate, nesterov);
+            }
+
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step, int width, int[] columns, int count) {
+                double[] v = first(parameter, values.length);
+
+                for (int offset = 0; offset < values.length; offset += width) {
+                    for (int column = 0; column < count; column++) {
+                        int i = offset + columns[column];
+                        double d = scale * gradient[i];
+
+                        v[i] = momentum * v[i] + d;
+                        values[i] += learningRate * (nesterov ? momentum * v[i] + d : v[i]);
+                    }
+                }
+            }
+        };
+    }
+
+    public static Optimizer RMSPROP() {
+        return RMSPROP(0.9, 1e-8);
+    }
+
+    /**
+     * RMSProp divides the gradient by a moving average of its magnitude, so every parameter gets its
+     * own effective learning rate. Typical learning rates are around 0.001.
+     * */
+    public static Optimizer RMSPROP(double decay, double epsilon) {
+        if(decay < 0 || decay >= 1)
+            throw new RuntimeException("The decay must be in [0, 1)!");
+
+        return new Optimizer() {
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step) {
+                Kernels.get().rmsProp(scale, gradient, decay, first(parameter, values.length), values, learningRate, epsilon);
+            }
+
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step, int width, int[] columns, int count) {
+                double[] s = first(parameter, values.length);
+
+                for (int offset = 0; offset < values.length; offset += width) {
+                    for (int column = 0; column < count; column++) {
+                        int i = offset + columns[column];
+                        double d = scale * gradient[i];
+
+                        s[i] = decay * s[i] + (1 - decay) * d * d;
+                        values[i] += learningRate * d / (Math.sqrt(s[i]) + epsilon);
+                    }
+                }
+            }
+        };
+    }
+
+    public static Optimizer ADAM() {
+        return ADAM(0.9, 0.999, 1e-8);
+    }
+
+    /**
+     * Adam combines momentum with the per parameter scaling of RMSProp and corrects the bias of both
+     * moving averages in the first updates. Typical learning rates are around 0.001.
+     * */
+    public static Optimizer ADAM(double beta1, double beta2, double epsilon) {
+        return adam(beta1, beta2, epsilon, 0);
+    }
+
+    public static Optimizer ADAMW(double weightDecay) {
+        return ADAMW(0.9, 0.999, 1e-8, weightDecay);
+    }
+
+    /**
+     * Adam with decoupled weight decay: the parameters are shrunk by learning rate times weight decay
+     * in every update, independent of the gradient scaling.
+     * */
+    public static Optimizer ADAMW(double beta1, double beta2, double epsilon, double weightDecay) {
+        return adam(beta1, beta2, epsilon, weightDecay);
+    }
+
+    private static Optimizer adam(double beta1, double beta2, double epsilon, double weightDecay) {
+        if(beta1 < 0 || beta1 >= 1 || beta2 < 0 || beta2 >= 1)
+            throw new RuntimeException("The betas must be in [0, 1)!");
+
+        return new Optimizer() {
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step) {
+                double correction = Math.sqrt(1 - Math.pow(beta2, step));
+                double stepSize = learningRate * correction / (1 - Math.pow(beta1, step));
+
+                Kernels.get().adam(scale, gradient, beta1, first(parameter, values.length), beta2, second(parameter, values.length), values, stepSize, epsilon * correction, learningRate * weightDecay);
+            }
+
+            @Override
+            public void update(int parameter, double[] values, double[] gradient, double scale, double learningRate, long step, int width, int[] columns, int count) {
+                double correction = Math.sqrt(1 - Math.pow(beta2, step));
+                double stepSize = learningRate * correction / (1 - Math.pow(beta1, step));
+                double scaledEpsilon = epsilon * correction, decay = learningRate * weightDecay;
+                double[] m = first(parameter, values.length), v = second(parameter, values.length);
+
+                for (int offset = 0; offset < values.length; offset += width) {
+                    for (int column = 0; column < count; column++) {
+                        int i = offset + columns[column];
+                        double d = scale * gradient[i];
+
+                        m[i] = beta1 * m[i] + (1 - beta1) * d;
+                        v[i] = beta2 * v[i] + (1 - beta2) * d * d;
+                        values[i] = values[i] * (1 - decay) + stepSize * m[i] / (Math.sqrt(v[i]) + scaledEpsilon);
+                    }
+                }
+            }
+        };
+    }
+}
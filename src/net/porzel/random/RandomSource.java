@@ -0,0 +1,30 @@
+package net.porzel.random;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Creates the random generators used for weight initialization and sampling. All generators are
+ * L64X128MixRandom instances, which are fast, have no shared state and can be split into statistically
+ * independent streams, one for every thread that needs random numbers. A generator created from a
+ * seed always produces the same numbers, so seeded runs can be reproduced exactly.
+ * */
+public final class RandomSource {
+    public static final String ALGORITHM = "L64X128MixRandom";
+
+    private static final RandomGeneratorFactory<RandomGenerator.SplittableGenerator> FACTORY = RandomGeneratorFactory.of(ALGORITHM);
+
+    private RandomSource() {
+    }
+
+    public static RandomGenerator.SplittableGenerator create(long seed) {
+        return FACTORY.create(seed);
+    }
+
+    /**
+     * Creates a generator with a seed that is different for every call.
+     * */
+    public static RandomGenerator.SplittableGenerator create() {
+        return FACTORY.create();
+    }
+}